@@ -0,0 +1,81 @@
+package com.brianwehrle.chess.benchmarks;
+
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Game;
+import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.models.MoveGenerator;
+import com.brianwehrle.chess.models.MoveList;
+import com.brianwehrle.chess.models.Player;
+import com.brianwehrle.chess.utilities.Converter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class GameBenchmark {
+
+    // Ruy Lopez, 12 plies with castling and a capture
+    private static final String[] OPENING = {"e2e4", "e7e5", "g1f3", "b8c6", "f1b5", "a7a6", "b5c6", "d7c6", "e1g1", "f7f6", "d2d4", "e5d4"};
+
+    @State(Scope.Thread)
+    public static class PositionState {
+        @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME})
+        public String fen;
+
+        private Chessboard board;
+        private final MoveList moves = new MoveList();
+
+        @Setup
+        public void setUp() {
+            board = new Chessboard();
+            board.loadPositionFromFen(fen);
+        }
+    }
+
+    private Move[] openingMoves;
+
+    @Setup
+    public void setUp() {
+        Game game = new Game(new Player("white"), new Player("black"), UUID.randomUUID());
+        openingMoves = new Move[OPENING.length];
+        for (int i = 0; i < OPENING.length; i++) {
+            openingMoves[i] = findMove(game.getLegalMoves(), OPENING[i]);
+            game.makeMove(openingMoves[i]);
+        }
+    }
+
+    // Game.makeMove validates the move, plays it and generates the legal moves for the reply,
+    // so a short game is played per call and the time is reported per move
+    @Benchmark
+    @OperationsPerInvocation(12)
+    public Game makeMove() {
+        Game game = new Game(new Player("white"), new Player("black"), UUID.randomUUID());
+
+        for (Move move : openingMoves) {
+            game.makeMove(move);
+        }
+
+        return game;
+    }
+
+    // what Game.getLegalMoves costs to fill after every move
+    @Benchmark
+    public MoveList getLegalMoves(PositionState state) {
+        MoveGenerator.generateLegalMoves(state.board, state.moves);
+        return state.moves;
+    }
+
+    private static Move findMove(ArrayList<Move> moves, String uci) {
+        for (Move move : moves) {
+            if (Converter.moveToUci(move).equals(uci)) return move;
+        }
+
+        throw new IllegalStateException("Opening move " + uci + " is not legal");
+    }
+}
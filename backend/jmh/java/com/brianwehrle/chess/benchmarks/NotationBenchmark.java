@@ -0,0 +1,51 @@
+package com.brianwehrle.chess.benchmarks;
+
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.models.MoveGenerator;
+import com.brianwehrle.chess.utilities.Converter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class NotationBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME})
+    public String fen;
+
+    private Chessboard board;
+    private ArrayList<Move> legalMoves;
+
+    @Setup
+    public void setUp() {
+        board = new Chessboard();
+        board.loadPositionFromFen(fen);
+        legalMoves = MoveGenerator.generateLegalMoves(board);
+    }
+
+    @Benchmark
+    public String convertPositionToFen() {
+        return board.convertPositionToFen();
+    }
+
+    @Benchmark
+    public Chessboard loadPositionFromFen() {
+        board.loadPositionFromFen(fen);
+        return board;
+    }
+
+    // every legal move of the position, so the cost depends on the mix of move types
+    @Benchmark
+    public void moveToAlgebraic(Blackhole blackhole) {
+        for (Move move : legalMoves) {
+            blackhole.consume(Converter.moveToAlgebraic(move, 0));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.brianwehrle.chess.benchmarks;
+
+import com.brianwehrle.chess.engine.ParallelSearch;
+import com.brianwehrle.chess.engine.SearchLimits;
+import com.brianwehrle.chess.engine.SearchResult;
+import com.brianwehrle.chess.engine.TranspositionTable;
+import com.brianwehrle.chess.models.Chessboard;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// time to search to a fixed depth with each thread count, compare across threads for Lazy SMP scaling
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Param({Positions.KIWIPETE, Positions.MIDDLEGAME})
+    public String fen;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"8"})
+    public int depth;
+
+    private Chessboard board;
+    private ExecutorService executor;
+    private TranspositionTable table;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = new Chessboard();
+        board.loadPositionFromFen(fen);
+        executor = Executors.newFixedThreadPool(threads);
+        table = new TranspositionTable(64);
+    }
+
+    // every search starts from an empty table
+    @Setup(Level.Iteration)
+    public void clearTable() {
+        table.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public SearchResult searchToDepth() {
+        return new ParallelSearch(board, table, executor).search(SearchLimits.ofDepth(depth), threads);
+    }
+}
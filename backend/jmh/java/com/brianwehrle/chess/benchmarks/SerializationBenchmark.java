@@ -0,0 +1,39 @@
+package com.brianwehrle.chess.benchmarks;
+
+import com.brianwehrle.chess.dtos.PositionDto;
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Game;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME})
+    public String fen;
+
+    // configured the same way Spring MVC configures the mapper GameController responses go through
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private Game game;
+
+    @Setup
+    public void setUp() {
+        Chessboard board = new Chessboard();
+        board.loadPositionFromFen(fen);
+        game = new Game(board, Game.GameStatus.WHITE_TO_MOVE);
+    }
+
+    // what GET /{gameId}/getPosition does per request
+    @Benchmark
+    public byte[] serializePosition() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(new PositionDto(game.getFenPosition(), game.getFen(), game.getLegalMoves(), null));
+    }
+}
@@ -1,14 +1,80 @@
 package com.brianwehrle.chess;
 
+import com.brianwehrle.chess.engine.EndgameTablebase;
+import com.brianwehrle.chess.engine.OpeningBook;
+import com.brianwehrle.chess.engine.PolyglotKeys;
+import com.brianwehrle.chess.engine.SyzygyTablebase;
+import com.brianwehrle.chess.engine.Tablebase;
+import com.brianwehrle.chess.engine.TranspositionTable;
+import com.brianwehrle.chess.services.GameJournal;
 import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
+@EnableScheduling
 public class AppConfig {
 
     @Bean
     public ModelMapper modelMapper() {
         return new ModelMapper();
     }
-}
\ No newline at end of file
+
+    // shared by every search
+    @Bean
+    public TranspositionTable transpositionTable(@Value("${chess.engine.hash-mb:64}") int sizeMb) {
+        return new TranspositionTable(sizeMb);
+    }
+
+    // threads for the helpers of parallel searches, the main search runs on the request thread
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService searchExecutor(@Value("${chess.engine.max-threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int maxThreads) {
+        AtomicInteger count = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(Math.max(1, maxThreads - 1), runnable -> {
+            Thread thread = new Thread(runnable, "search-helper-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // without a book every best move is searched. the keys file is only needed for
+    // books hashed with something other than the standard Polyglot numbers
+    @Bean
+    public OpeningBook openingBook(@Value("${chess.book.path:}") String bookPath,
+                                   @Value("${chess.book.keys-path:}") String keysPath) throws IOException {
+        if (bookPath.isBlank()) return OpeningBook.empty();
+
+        PolyglotKeys keys = keysPath.isBlank() ? PolyglotKeys.standard() : PolyglotKeys.load(Path.of(keysPath));
+        return OpeningBook.open(Path.of(bookPath), keys);
+    }
+
+    // without Syzygy files only the endings generated in memory are known
+    @Bean
+    public Tablebase tablebase(@Value("${chess.tablebase.syzygy-path:}") String syzygyPath,
+                               @Value("${chess.tablebase.max-open-files:64}") int maxOpenFiles) throws IOException {
+        if (syzygyPath.isBlank()) return EndgameTablebase.getInstance();
+
+        return new SyzygyTablebase(Arrays.stream(syzygyPath.split(File.pathSeparator)).map(Path::of).toList(),
+                maxOpenFiles, EndgameTablebase.getInstance());
+    }
+
+    // without a path games only live in memory
+    @Bean(destroyMethod = "close")
+    public GameJournal gameJournal(@Value("${chess.journal.path:}") String path,
+                                   @Value("${chess.journal.fsync:true}") boolean fsync) throws IOException {
+        if (path.isBlank()) return GameJournal.disabled();
+
+        return GameJournal.open(Path.of(path), fsync);
+    }
+}
@@ -1,16 +1,26 @@
 package com.brianwehrle.chess.controllers;
 
+import com.brianwehrle.chess.dtos.BatchMoveDto;
+import com.brianwehrle.chess.dtos.EvaluationDto;
 import com.brianwehrle.chess.dtos.MoveDto;
-import com.brianwehrle.chess.dtos.PositionDto;
+import com.brianwehrle.chess.dtos.SerializedPosition;
+import com.brianwehrle.chess.engine.OpeningBook;
+import com.brianwehrle.chess.engine.SearchResult;
+import com.brianwehrle.chess.engine.TranspositionTable;
 import com.brianwehrle.chess.models.Game;
 import com.brianwehrle.chess.models.Move;
 import com.brianwehrle.chess.services.GameService;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.List;
 import java.util.UUID;
 
 @CrossOrigin
@@ -25,15 +35,44 @@ public class GameController {
     @Qualifier("GameServiceImpl")
     private GameService gameService;
 
+    @Value("${chess.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    // from the start position, or from a full fen
     @PostMapping("/newGame")
-    public ResponseEntity<?> startNewGame() {
-        String gameId = gameService.startNewGame().toString();
-        return ResponseEntity.ok(gameId);
+    public ResponseEntity<?> startNewGame(@RequestParam(required = false) String fen) {
+        UUID gameId = (fen == null ? gameService.startNewGame() : gameService.startNewGame(fen));
+        return ResponseEntity.ok(gameId.toString());
+    }
+
+    // count games, all from the start position or all from the same full fen. ids come back in a list
+    @PostMapping("/newGames")
+    public ResponseEntity<?> startNewGames(@RequestParam int count, @RequestParam(required = false) String fen) {
+        if (count <= 0 || count > maxBatchSize) {
+            return ResponseEntity.badRequest().body("count must be between 1 and " + maxBatchSize);
+        }
+
+        return ResponseEntity.ok(gameService.startNewGames(count, fen));
     }
 
-    @GetMapping("{gameId}/getPosition")
-    public PositionDto getPosition(@PathVariable UUID gameId) {
-        return gameService.getPosition(gameId);
+    // the same bytes until the next move, and 304 Not Modified for a client that already has them
+    @GetMapping(value = "{gameId}/getPosition", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getPosition(@PathVariable UUID gameId, WebRequest request) {
+        SerializedPosition position = gameService.getSerializedPosition(gameId);
+        if (request.checkNotModified(position.etag())) return null;
+
+        return ResponseEntity.ok().eTag(position.etag()).body(position.json());
+    }
+
+    // server-sent events: "position" once, then "move" for every move until the game ends
+    @GetMapping(value = "{gameId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@PathVariable UUID gameId) {
+        return gameService.subscribe(gameId);
+    }
+
+    @GetMapping("{gameId}/evaluation")
+    public EvaluationDto getEvaluation(@PathVariable UUID gameId) {
+        return gameService.getEvaluation(gameId);
     }
 
     @PostMapping("{gameId}/makeMove/")
@@ -48,4 +87,36 @@ public class GameController {
             return ResponseEntity.ok(tryMove);
         }
     }
+
+    // moves for any number of games, made in order, with a result for each
+    @PostMapping("/makeMoves")
+    public ResponseEntity<?> makeMoves(@RequestBody List<BatchMoveDto> moves) {
+        if (moves.size() > maxBatchSize) {
+            return ResponseEntity.badRequest().body("at most " + maxBatchSize + " moves in a batch");
+        }
+
+        return ResponseEntity.ok(gameService.makeMoves(moves));
+    }
+
+    @GetMapping("{gameId}/bestMove")
+    public ResponseEntity<?> findBestMove(@PathVariable UUID gameId,
+                                          @RequestParam(defaultValue = "1000") long timeMillis,
+                                          @RequestParam(defaultValue = "1") int threads) {
+        if (timeMillis <= 0 || threads <= 0) {
+            return ResponseEntity.badRequest().body("timeMillis and threads must be positive");
+        }
+
+        SearchResult result = gameService.findBestMove(gameId, timeMillis, threads);
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("{gameId}/bookMoves")
+    public List<OpeningBook.BookMove> getBookMoves(@PathVariable UUID gameId) {
+        return gameService.getBookMoves(gameId);
+    }
+
+    @GetMapping("engine/transpositionTable")
+    public TranspositionTable.Stats getTranspositionTableStats() {
+        return gameService.getTranspositionTableStats();
+    }
 }
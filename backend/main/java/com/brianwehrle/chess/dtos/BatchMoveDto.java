@@ -0,0 +1,6 @@
+package com.brianwehrle.chess.dtos;
+
+import java.util.UUID;
+
+// one move of a batch, batches can have moves for any number of games
+public record BatchMoveDto(UUID gameId, MoveDto move){}
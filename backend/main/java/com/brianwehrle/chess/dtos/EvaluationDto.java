@@ -0,0 +1,4 @@
+package com.brianwehrle.chess.dtos;
+
+// centipawns, positive is good for white
+public record EvaluationDto(int score, int material, int pieceSquare){}
@@ -0,0 +1,6 @@
+package com.brianwehrle.chess.dtos;
+
+import com.brianwehrle.chess.models.Game;
+
+// pushed to a game's subscribers. move is in UCI, null for the position sent when subscribing
+public record GameEventDto(int ply, String move, String fen, Game.GameStatus status){}
@@ -60,4 +60,16 @@ public class MoveDto {
     public void setPieceType(Piece.PieceType pieceType) {
         this.pieceType = pieceType;
     }
+
+    // the same as mapping it with the ModelMapper, without the reflection
+    public Move toMove() {
+        Move move = new Move();
+        move.setStartRow(startRow);
+        move.setStartCol(startCol);
+        move.setEndRow(endRow);
+        move.setEndCol(endCol);
+        move.setMoveType(moveType);
+        move.setPieceType(pieceType);
+        return move;
+    }
 }
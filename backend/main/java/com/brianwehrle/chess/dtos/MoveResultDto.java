@@ -0,0 +1,8 @@
+package com.brianwehrle.chess.dtos;
+
+import com.brianwehrle.chess.models.Game;
+
+import java.util.UUID;
+
+// status is what makeMove would have returned for the move, error is set instead if there is no such game
+public record MoveResultDto(UUID gameId, Game.GameStatus status, String error){}
@@ -1,7 +1,10 @@
 package com.brianwehrle.chess.dtos;
 
+import com.brianwehrle.chess.models.Game;
 import com.brianwehrle.chess.models.Move;
 
 import java.util.ArrayList;
 
-public record PositionDto(String fenPosition, ArrayList<Move> legalMoves){}
+// fenPosition is only the placement, fen the full position.
+// forcedOutcome is how the game ends with best play, null until few enough pieces are left to know
+public record PositionDto(String fenPosition, String fen, ArrayList<Move> legalMoves, Game.GameStatus forcedOutcome){}
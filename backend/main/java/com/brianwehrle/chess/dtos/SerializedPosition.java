@@ -0,0 +1,4 @@
+package com.brianwehrle.chess.dtos;
+
+// a PositionDto already written as JSON. etag changes with every move made in the game
+public record SerializedPosition(String etag, byte[] json) {}
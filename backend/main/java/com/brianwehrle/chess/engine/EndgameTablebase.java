@@ -0,0 +1,328 @@
+package com.brianwehrle.chess.engine;
+
+import com.brianwehrle.chess.models.Attacks;
+import com.brianwehrle.chess.models.Bitboard;
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Color;
+import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.models.MoveGenerator;
+import com.brianwehrle.chess.models.MoveList;
+import com.brianwehrle.chess.models.Position;
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/*
+    Exact results for positions with at most three pieces, both kings and one queen, rook
+    or pawn (bishop or knight endings and bare kings are draws). Each ending is solved by
+    retrograde analysis the first time it is probed and kept in memory:
+    - positions where the weak side is mated are lost in 0
+    - the strong side wins in n plies if a move reaches a position lost in n - 1
+    - the weak side loses in n plies if every move reaches a win, the slowest in n - 1
+    - whatever is left when nothing changes any more is a draw
+
+    Positions are stored with the strong side as white, black's are mirrored top to bottom.
+    Index is ((sideToMove * 64 + strongKing) * 64 + weakKing) * 64 + piece, sideToMove 0 for strong.
+
+    These are also what SyzygyTablebase falls back on when it has no file for an ending.
+ */
+public final class EndgameTablebase implements Tablebase {
+    private static final EndgameTablebase INSTANCE = new EndgameTablebase();
+
+    private static final byte UNKNOWN = 0;
+    private static final byte ILLEGAL = 1;
+    private static final byte WIN = 2;
+    private static final byte LOSS = 3;
+    private static final byte DRAW = 4;
+
+    private static final int STRONG = 0;
+    private static final int WEAK = 1;
+    private static final int SIZE = 2 * 64 * 64 * 64;
+    private static final int MAX_PIECES = 3;
+
+    private static final class Table {
+        private final byte[] results = new byte[SIZE];
+        private final byte[] plies = new byte[SIZE];
+    }
+
+    private final Map<PieceType, Table> tables = new EnumMap<>(PieceType.class);
+
+    private EndgameTablebase() {}
+
+    public static EndgameTablebase getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public int getMaxPieces() {
+        return MAX_PIECES;
+    }
+
+    @Override
+    public TablebaseResult probe(Chessboard board) {
+        return probe(board.getPosition());
+    }
+
+    // null if the position has more than three pieces, castling rights, or can't happen
+    public TablebaseResult probe(Position position) {
+        long occupied = position.getOccupancy();
+        if (Bitboard.count(occupied) > MAX_PIECES || position.getCastlingRights() != 0) return null;
+
+        long kings = position.getBitboard(Color.WHITE, PieceType.KING) | position.getBitboard(Color.BLACK, PieceType.KING);
+        long others = occupied & ~kings;
+        if (others == 0) return TablebaseResult.DRAW;
+
+        int pieceSquare = Bitboard.first(others);
+        int piece = position.pieceAt(pieceSquare);
+        PieceType type = Position.typeOf(piece);
+        if (type == PieceType.BISHOP || type == PieceType.KNIGHT) return TablebaseResult.DRAW;
+
+        Color strong = Position.colorOf(piece);
+        Color weak = (strong == Color.WHITE ? Color.BLACK : Color.WHITE);
+        // mirror so the strong side plays up the board
+        int mirror = (strong == Color.WHITE ? 0 : 56);
+        int sideToMove = (position.getSideToMove() == strong ? STRONG : WEAK);
+
+        int index = index(sideToMove, position.getKingSquare(strong) ^ mirror, position.getKingSquare(weak) ^ mirror, pieceSquare ^ mirror);
+        Table table = table(type);
+
+        return switch (table.results[index]) {
+            case WIN -> new TablebaseResult(TablebaseResult.Wdl.WIN, table.plies[index] & 0xFF);
+            case LOSS -> new TablebaseResult(TablebaseResult.Wdl.LOSS, table.plies[index] & 0xFF);
+            case DRAW -> TablebaseResult.DRAW;
+            default -> null;
+        };
+    }
+
+    // the fastest win, the slowest loss, or any move that holds the draw
+    @Override
+    public int bestMove(Chessboard board) {
+        if (probe(board.getPosition()) == null) return Move.NONE;
+
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegalMoves(board, moves);
+
+        int bestMove = Move.NONE;
+        int bestRank = Integer.MIN_VALUE;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+
+            board.makeMove(move);
+            TablebaseResult reply = probe(board.getPosition());
+            board.unmakeMove(move);
+
+            // the result for the other side after the move
+            int rank = switch (reply.wdl()) {
+                case LOSS, BLESSED_LOSS -> 1000 - reply.pliesToMate();
+                case WIN, CURSED_WIN -> -1000 + reply.pliesToMate();
+                case DRAW -> 0;
+            };
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestMove = move;
+            }
+        }
+
+        return bestMove;
+    }
+
+    private synchronized Table table(PieceType type) {
+        Table table = tables.get(type);
+
+        if (table == null) {
+            // pawn endings need the endings they promote into
+            if (type == PieceType.PAWN) {
+                table(PieceType.QUEEN);
+                table(PieceType.ROOK);
+            }
+            table = generate(type);
+            tables.put(type, table);
+        }
+
+        return table;
+    }
+
+    private Table generate(PieceType type) {
+        Table table = new Table();
+        byte[] results = table.results;
+        byte[] plies = table.plies;
+
+        for (int index = 0; index < SIZE; index++) {
+            if (!isLegal(type, index)) {
+                results[index] = ILLEGAL;
+            } else if (!hasMoves(type, index)) {
+                // mated, or stalemated
+                boolean mated = sideToMove(index) == WEAK && weakKingAttacked(type, strongKing(index), weakKing(index), piece(index));
+                results[index] = (mated ? LOSS : DRAW);
+            }
+        }
+
+        // a pawn ending can go a while without changing before promotions into the longest wins count
+        int minPasses = (type == PieceType.PAWN ? Math.max(longestWin(tables.get(PieceType.QUEEN)), longestWin(tables.get(PieceType.ROOK))) + 2 : 0);
+
+        boolean changedLastPass = true;
+        for (int n = 1; n < 256; n++) {
+            boolean changed = false;
+            int side = (n % 2 == 1 ? STRONG : WEAK);
+
+            for (int index = side * SIZE / 2; index < (side + 1) * SIZE / 2; index++) {
+                if (results[index] != UNKNOWN) continue;
+
+                if (side == STRONG ? strongWinsIn(type, table, index, n) : weakLosesIn(type, table, index)) {
+                    results[index] = (side == STRONG ? WIN : LOSS);
+                    plies[index] = (byte) n;
+                    changed = true;
+                }
+            }
+
+            if (!changed && !changedLastPass && n > minPasses) break;
+            changedLastPass = changed;
+        }
+
+        for (int index = 0; index < SIZE; index++) {
+            if (results[index] == UNKNOWN) results[index] = DRAW;
+        }
+
+        return table;
+    }
+
+    // some strong move reaches a position the weak side loses in n - 1
+    private boolean strongWinsIn(PieceType type, Table table, int index, int n) {
+        int strongKing = strongKing(index);
+        int weakKing = weakKing(index);
+        int piece = piece(index);
+
+        for (long targets = strongKingMoves(strongKing, weakKing, piece); targets != 0; targets = Bitboard.removeFirst(targets)) {
+            if (lostIn(table, index(WEAK, Bitboard.first(targets), weakKing, piece), n - 1)) return true;
+        }
+
+        if (type == PieceType.PAWN) {
+            int next = piece + 8;
+            if (next == strongKing || next == weakKing) return false;
+
+            if (Bitboard.row(next) == 7) {
+                int promoted = index(WEAK, strongKing, weakKing, next);
+                return lostIn(tables.get(PieceType.QUEEN), promoted, n - 1) || lostIn(tables.get(PieceType.ROOK), promoted, n - 1);
+            }
+
+            int doublePush = next + 8;
+            return lostIn(table, index(WEAK, strongKing, weakKing, next), n - 1)
+                    || (Bitboard.row(piece) == 1 && doublePush != strongKing && doublePush != weakKing
+                        && lostIn(table, index(WEAK, strongKing, weakKing, doublePush), n - 1));
+        }
+
+        for (long targets = pieceAttacks(type, piece, strongKing, weakKing) & ~Bitboard.bit(strongKing) & ~Bitboard.bit(weakKing);
+             targets != 0; targets = Bitboard.removeFirst(targets)) {
+            if (lostIn(table, index(WEAK, strongKing, weakKing, Bitboard.first(targets)), n - 1)) return true;
+        }
+
+        return false;
+    }
+
+    // every weak move reaches a position the strong side has already been found to win
+    private boolean weakLosesIn(PieceType type, Table table, int index) {
+        int strongKing = strongKing(index);
+        int weakKing = weakKing(index);
+        int piece = piece(index);
+
+        for (long targets = weakKingMoves(type, strongKing, weakKing, piece); targets != 0; targets = Bitboard.removeFirst(targets)) {
+            int target = Bitboard.first(targets);
+
+            // taking the last piece draws
+            if (target == piece) return false;
+            if (table.results[index(STRONG, strongKing, target, piece)] != WIN) return false;
+        }
+
+        return true;
+    }
+
+    private static int longestWin(Table table) {
+        int longest = 0;
+
+        for (byte plies : table.plies) {
+            longest = Math.max(longest, plies & 0xFF);
+        }
+
+        return longest;
+    }
+
+    private static boolean lostIn(Table table, int index, int n) {
+        return table.results[index] == LOSS && (table.plies[index] & 0xFF) == n;
+    }
+
+    private static boolean isLegal(PieceType type, int index) {
+        int strongKing = strongKing(index);
+        int weakKing = weakKing(index);
+        int piece = piece(index);
+
+        if (strongKing == weakKing || piece == strongKing || piece == weakKing) return false;
+        if (Bitboard.contains(Attacks.kingAttacks(strongKing), weakKing)) return false;
+        if (type == PieceType.PAWN && (Bitboard.row(piece) == 0 || Bitboard.row(piece) == 7)) return false;
+
+        // the side not to move can't be in check
+        return sideToMove(index) == WEAK || !weakKingAttacked(type, strongKing, weakKing, piece);
+    }
+
+    private static boolean hasMoves(PieceType type, int index) {
+        int strongKing = strongKing(index);
+        int weakKing = weakKing(index);
+        int piece = piece(index);
+
+        if (sideToMove(index) == WEAK) return weakKingMoves(type, strongKing, weakKing, piece) != 0;
+        if (strongKingMoves(strongKing, weakKing, piece) != 0) return true;
+        if (type != PieceType.PAWN) return true;
+
+        int next = piece + 8;
+        return next != strongKing && next != weakKing;
+    }
+
+    private static long strongKingMoves(int strongKing, int weakKing, int piece) {
+        return Attacks.kingAttacks(strongKing) & ~Attacks.kingAttacks(weakKing) & ~Bitboard.bit(piece);
+    }
+
+    // squares the weak king can go to, including taking the piece if it isn't defended
+    private static long weakKingMoves(PieceType type, int strongKing, int weakKing, int piece) {
+        long moves = Attacks.kingAttacks(weakKing) & ~Attacks.kingAttacks(strongKing);
+        long res = Bitboard.EMPTY;
+
+        for (; moves != 0; moves = Bitboard.removeFirst(moves)) {
+            int target = Bitboard.first(moves);
+            if (target == piece || !weakKingAttacked(type, strongKing, target, piece)) res |= Bitboard.bit(target);
+        }
+
+        return res;
+    }
+
+    private static boolean weakKingAttacked(PieceType type, int strongKing, int weakKing, int piece) {
+        if (type == PieceType.PAWN) return Bitboard.contains(Attacks.pawnAttacks(Color.WHITE, piece), weakKing);
+
+        return Bitboard.contains(pieceAttacks(type, piece, strongKing, weakKing), weakKing);
+    }
+
+    private static long pieceAttacks(PieceType type, int piece, int strongKing, int weakKing) {
+        long occupied = Bitboard.bit(strongKing) | Bitboard.bit(weakKing) | Bitboard.bit(piece);
+
+        return type == PieceType.QUEEN ? Attacks.queenAttacks(piece, occupied) : Attacks.rookAttacks(piece, occupied);
+    }
+
+    private static int index(int sideToMove, int strongKing, int weakKing, int piece) {
+        return ((sideToMove * 64 + strongKing) * 64 + weakKing) * 64 + piece;
+    }
+
+    private static int sideToMove(int index) {
+        return index >>> 18;
+    }
+
+    private static int strongKing(int index) {
+        return (index >>> 12) & 0x3F;
+    }
+
+    private static int weakKing(int index) {
+        return (index >>> 6) & 0x3F;
+    }
+
+    private static int piece(int index) {
+        return index & 0x3F;
+    }
+}
@@ -0,0 +1,20 @@
+package com.brianwehrle.chess.engine;
+
+import com.brianwehrle.chess.models.Color;
+import com.brianwehrle.chess.models.Position;
+
+/*
+    Static evaluation in centipawns, from the point of view of the side to move.
+    Material and piece-square scores are kept up to date by Position as pieces move,
+    so evaluating a position is a couple of field reads.
+ */
+public final class Evaluator {
+
+    private Evaluator() {}
+
+    public static int evaluate(Position position) {
+        int score = position.getMaterial() + position.getPieceSquare();
+
+        return position.getSideToMove() == Color.WHITE ? score : -score;
+    }
+}
@@ -0,0 +1,153 @@
+package com.brianwehrle.chess.engine;
+
+import com.brianwehrle.chess.models.Bitboard;
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.models.MoveGenerator;
+import com.brianwehrle.chess.models.MoveList;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/*
+    Reads a Polyglot .bin opening book. The file is memory mapped, not loaded, and since
+    its entries are sorted by key the moves for a position are found by binary search.
+
+    Each entry is 16 bytes, big endian: key (8), move (2), weight (2), learn (4).
+    Moves are packed as to file (bits 0-2), to row (3-5), from file (6-8), from row (9-11)
+    and promotion piece (12-14, 0 none, 1 knight ... 4 queen). Castling is written as the
+    king taking its own rook.
+ */
+public class OpeningBook {
+    private static final int ENTRY_SIZE = 16;
+
+    // a move from the book with how often it should be played, relative to the others
+    public record BookMove(Move move, int weight) {}
+
+    private final ByteBuffer entries;
+    private final int size;
+    private final PolyglotKeys keys;
+
+    private OpeningBook(ByteBuffer entries, PolyglotKeys keys) {
+        this.entries = entries;
+        this.size = (entries == null ? 0 : entries.capacity() / ENTRY_SIZE);
+        this.keys = keys;
+    }
+
+    // a book without any moves, for when none is configured
+    public static OpeningBook empty() {
+        return new OpeningBook(null, null);
+    }
+
+    public static OpeningBook open(Path path, PolyglotKeys keys) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() % ENTRY_SIZE != 0) throw new IOException(path + " is not a Polyglot book");
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(path + " is too large to map");
+
+            // the mapping stays valid after the channel is closed
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), keys);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the legal moves the book has for the position, most played first as stored in the book
+    public List<BookMove> lookup(Chessboard board) {
+        List<BookMove> res = new ArrayList<>();
+        if (size == 0) return res;
+
+        long key = keys.key(board.getPosition());
+        MoveList legalMoves = new MoveList();
+        MoveGenerator.generateLegalMoves(board, legalMoves);
+
+        for (int i = firstEntry(key); i < size && keyAt(i) == key; i++) {
+            int move = toLegalMove(entries.getShort(i * ENTRY_SIZE + 8) & 0xFFFF, legalMoves);
+            int weight = entries.getShort(i * ENTRY_SIZE + 10) & 0xFFFF;
+
+            // a book made for another variant, or a bad entry
+            if (move != Move.NONE) res.add(new BookMove(Move.fromEncoded(move), weight));
+        }
+
+        return res;
+    }
+
+    // picks one of the book moves, weighted by how often each should be played, or null if there are none
+    public Move pick(Chessboard board, RandomGenerator random) {
+        List<BookMove> moves = lookup(board);
+        int total = 0;
+
+        for (BookMove move : moves) total += move.weight();
+        if (total == 0) return moves.isEmpty() ? null : moves.get(0).move();
+
+        int choice = random.nextInt(total);
+        for (BookMove move : moves) {
+            choice -= move.weight();
+            if (choice < 0) return move.move();
+        }
+
+        return null;
+    }
+
+    // index of the first entry with a key of at least key, comparing keys as unsigned
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (Long.compareUnsigned(keyAt(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private long keyAt(int index) {
+        return entries.getLong(index * ENTRY_SIZE);
+    }
+
+    private static int toLegalMove(int bookMove, MoveList legalMoves) {
+        int end = Bitboard.square((bookMove >>> 3) & 0x7, bookMove & 0x7);
+        int start = Bitboard.square((bookMove >>> 9) & 0x7, (bookMove >>> 6) & 0x7);
+        int promotion = (bookMove >>> 12) & 0x7;
+
+        for (int i = 0; i < legalMoves.size(); i++) {
+            int move = legalMoves.get(i);
+            if (Move.startSquare(move) != start) continue;
+
+            Move.MoveType moveType = Move.moveTypeOf(move);
+            int moveEnd = Move.endSquare(move);
+
+            // the book has the king landing on the rook's square
+            if (moveType == Move.MoveType.CASTLE) {
+                moveEnd = (Bitboard.col(moveEnd) == 6 ? moveEnd + 1 : moveEnd - 2);
+            }
+
+            if (moveEnd == end && promotionOf(moveType) == promotion) return move;
+        }
+
+        return Move.NONE;
+    }
+
+    private static int promotionOf(Move.MoveType moveType) {
+        return switch (moveType) {
+            case PROMOTION_KNIGHT -> 1;
+            case PROMOTION_BISHOP -> 2;
+            case PROMOTION_ROOK -> 3;
+            case PROMOTION_QUEEN -> 4;
+            default -> 0;
+        };
+    }
+}
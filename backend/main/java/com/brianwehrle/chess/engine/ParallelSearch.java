@@ -0,0 +1,81 @@
+package com.brianwehrle.chess.engine;
+
+import com.brianwehrle.chess.models.Chessboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/*
+    Lazy SMP: helper threads run their own searches of the same position at the same
+    time as the main search, all sharing one transposition table. The helpers don't
+    communicate with each other, they just fill the table with results the main search
+    (and each other) can use. Half of them start one ply deeper so they don't all
+    walk the tree in step.
+
+    The main search decides when everyone stops. The deepest completed result wins,
+    the main search's on a tie.
+ */
+public class ParallelSearch {
+
+    private final Chessboard board;
+    private final TranspositionTable table;
+    private final ExecutorService executor;
+    private final Tablebase tablebase;
+
+    public ParallelSearch(Chessboard board, TranspositionTable table, ExecutorService executor) {
+        this(board, table, executor, EndgameTablebase.getInstance());
+    }
+
+    // helpers run on executor, the main search on the calling thread
+    public ParallelSearch(Chessboard board, TranspositionTable table, ExecutorService executor, Tablebase tablebase) {
+        this.board = board;
+        this.table = table;
+        this.executor = executor;
+        this.tablebase = tablebase;
+    }
+
+    public SearchResult search(SearchLimits limits, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("A search needs at least 1 thread");
+
+        long start = System.nanoTime();
+        table.newSearch();
+
+        List<Search> helpers = new ArrayList<>();
+        List<Future<SearchResult>> helperResults = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            Search helper = new Search(board, table, tablebase);
+            int startDepth = 1 + i % 2;
+
+            helpers.add(helper);
+            helperResults.add(executor.submit(() -> helper.search(limits, startDepth)));
+        }
+
+        SearchResult best = new Search(board, table, tablebase).search(limits, 1);
+        long nodes = best.nodes();
+
+        helpers.forEach(Search::stop);
+        for (Future<SearchResult> future : helperResults) {
+            // helpers still waiting for a thread have nothing to add
+            if (future.cancel(false)) continue;
+
+            SearchResult result = waitFor(future);
+            nodes += result.nodes();
+            if (result.depth() > best.depth() && result.bestMove() != null) best = result;
+        }
+
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        return new SearchResult(best.bestMove(), best.score(), best.depth(), nodes, elapsed, threads);
+    }
+
+    private static SearchResult waitFor(Future<SearchResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for search threads", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search thread failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.brianwehrle.chess.engine;
+
+import com.brianwehrle.chess.models.*;
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+
+import java.util.Arrays;
+
+/*
+    Negamax alpha-beta search with iterative deepening. Each iteration searches the
+    best move of the one before first, so when the time or node budget runs out part
+    way through an iteration its best move so far is still safe to play.
+
+    Results are kept in a TranspositionTable, which can be shared with other searches.
+    At the horizon a quiescence search plays out captures until the position is quiet,
+    skipping captures that lose material by static exchange evaluation.
+    Positions with few enough pieces are scored exactly from the Tablebase, and when the
+    root is one of them the tablebase picks the move without searching.
+
+    Moves are tried in the order
+    - best move of the previous iteration at the root, the transposition table move elsewhere
+    - captures that don't lose material, most valuable victim first, then least valuable attacker
+    - queen promotions
+    - killer moves, quiet moves that caused a cutoff at the same ply
+    - other quiet moves by their history score
+    - captures that lose material
+ */
+public class Search {
+    public static final int MAX_PLY = 128;
+    public static final int MATE = 30000;
+    public static final int TABLEBASE_WIN = MATE - 2 * MAX_PLY;
+    // mates and tablebase wins score at least this, however far from the root they are found
+    public static final int DECISIVE = TABLEBASE_WIN - MAX_PLY;
+    private static final int INFINITY = 32000;
+    private static final int DEFAULT_TABLE_MB = 16;
+
+    // how many nodes go by between looks at the clock
+    private static final int CHECK_INTERVAL = 2048;
+
+    private static final int HASH_MOVE_SCORE = 1_000_000;
+    private static final int CAPTURE_SCORE = 100_000;
+    private static final int PROMOTION_SCORE = 90_000;
+    private static final int KILLER_SCORE = 80_000;
+    private static final int LOSING_CAPTURE_SCORE = -100_000;
+    private static final int MAX_HISTORY = 50_000;
+
+    private final Chessboard board;
+    private final Position position;
+    private final TranspositionTable table;
+    private final Tablebase tablebase;
+
+    private final MoveList[] moveLists = new MoveList[MAX_PLY + 1];
+    private final int[][] moveScores = new int[MAX_PLY + 1][256];
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[12][64];
+
+    private long nodes;
+    private long deadline;
+    private long maxNodes;
+    private boolean stopped;
+    // set from other threads, so it is only read every CHECK_INTERVAL nodes
+    private volatile boolean stopRequested;
+    private int rootBestMove;
+
+    public Search(Chessboard board) {
+        this(board, new TranspositionTable(DEFAULT_TABLE_MB));
+    }
+
+    // searches a copy, the board passed in is left alone
+    public Search(Chessboard board, TranspositionTable table) {
+        this(board, table, EndgameTablebase.getInstance());
+    }
+
+    public Search(Chessboard board, TranspositionTable table, Tablebase tablebase) {
+        this.board = new Chessboard(board);
+        this.position = this.board.getPosition();
+        this.table = table;
+        this.tablebase = tablebase;
+
+        for (int ply = 0; ply <= MAX_PLY; ply++) {
+            moveLists[ply] = new MoveList();
+        }
+    }
+
+    public SearchResult search(SearchLimits limits) {
+        table.newSearch();
+        return search(limits, 1);
+    }
+
+    // ends the search as soon as it next checks its limits, and any later search on this object
+    public void stop() {
+        stopRequested = true;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    // iterative deepening from startDepth, without starting a new transposition table generation
+    SearchResult search(SearchLimits limits, int startDepth) {
+        long start = System.nanoTime();
+        deadline = (limits.timeMillis() >= Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : start + limits.timeMillis() * 1_000_000);
+        maxNodes = limits.maxNodes();
+        nodes = 0;
+        stopped = stopRequested;
+        for (int[] killer : killers) Arrays.fill(killer, Move.NONE);
+        for (int[] scores : history) Arrays.fill(scores, 0);
+
+        MoveList rootMoves = moveLists[0];
+        MoveGenerator.generateLegalMoves(board, rootMoves);
+        if (rootMoves.isEmpty()) {
+            int score = (board.inCheck(position.getSideToMove()) ? -MATE : 0);
+            return new SearchResult(null, score, 0, 0, elapsedMillis(start), 1);
+        }
+
+        int tablebaseMove = tablebase.bestMove(board);
+        if (tablebaseMove != Move.NONE) {
+            TablebaseResult result = tablebase.probe(board);
+            return new SearchResult(Move.fromEncoded(tablebaseMove), tablebaseScore(result, 0), 0, 0, elapsedMillis(start), 1);
+        }
+
+        int bestMove = rootMoves.get(0);
+        int bestScore = 0;
+        int completedDepth = 0;
+        int maxDepth = Math.min(limits.maxDepth(), MAX_PLY - 1);
+
+        for (int depth = Math.min(startDepth, maxDepth); depth <= maxDepth; depth++) {
+            int score = searchRoot(depth, bestMove);
+
+            // a stopped iteration has still searched the previous best move first,
+            // so anything it found is at least as good
+            if (rootBestMove != Move.NONE) {
+                bestMove = rootBestMove;
+                bestScore = score;
+            }
+            if (stopped) break;
+            completedDepth = depth;
+
+            // found a forced mate, deeper won't find a faster one
+            if (Math.abs(score) >= MATE - MAX_PLY) break;
+        }
+
+        return new SearchResult(Move.fromEncoded(bestMove), bestScore, completedDepth, nodes, elapsedMillis(start), 1);
+    }
+
+    private int searchRoot(int depth, int previousBest) {
+        MoveList moves = moveLists[0];
+        int alpha = -INFINITY;
+        rootBestMove = Move.NONE;
+
+        scoreMoves(moves, 0, previousBest);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = pickMove(moves, 0, i);
+
+            board.makeMove(move);
+            int score = -negamax(depth - 1, 1, -INFINITY, -alpha);
+            board.unmakeMove(move);
+
+            if (stopped) break;
+
+            if (score > alpha) {
+                alpha = score;
+                rootBestMove = move;
+            }
+        }
+
+        if (!stopped) table.store(position.getKey(), rootBestMove, alpha, depth, TranspositionTable.EXACT, 0);
+
+        return alpha;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if (++nodes % CHECK_INTERVAL == 0) checkLimits();
+        if (stopped) return 0;
+
+        if (board.isRepetition() || position.getHalfMoveClock() >= 100) return 0;
+        if (Bitboard.count(position.getOccupancy()) <= tablebase.getMaxPieces()) {
+            TablebaseResult result = tablebase.probe(board);
+            if (result != null) return tablebaseScore(result, ply);
+        }
+
+        boolean inCheck = board.inCheck(position.getSideToMove());
+        // look one move further when in check, so checks at the horizon aren't missed
+        if (inCheck) depth++;
+
+        if (ply >= MAX_PLY) return Evaluator.evaluate(position);
+        if (depth <= 0) return quiescence(ply, alpha, beta);
+
+        long key = position.getKey();
+        int hashMove = Move.NONE;
+        long entry = table.probe(key);
+        if (entry != TranspositionTable.MISS) {
+            hashMove = TranspositionTable.move(entry);
+
+            // searched at least as deep before, use the result if its bound settles this node
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry, ply);
+                int bound = TranspositionTable.bound(entry);
+
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        MoveList moves = moveLists[ply];
+        MoveGenerator.generateLegalMoves(board, moves);
+        if (moves.isEmpty()) {
+            // prefer the quickest mate
+            return inCheck ? -MATE + ply : 0;
+        }
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = Move.NONE;
+        scoreMoves(moves, ply, hashMove);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = pickMove(moves, ply, i);
+            boolean quiet = !isCapture(move);
+            int piece = position.pieceAt(Move.startSquare(move));
+
+            board.makeMove(move);
+            int score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            board.unmakeMove(move);
+
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    bestMove = move;
+                }
+            }
+
+            if (score >= beta) {
+                if (quiet) rememberCutoff(move, piece, depth, ply);
+                break;
+            }
+        }
+
+        int bound = (bestScore >= beta ? TranspositionTable.LOWER
+                : bestScore > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER);
+        table.store(key, bestMove, bestScore, depth, bound, ply);
+
+        return bestScore;
+    }
+
+    // only captures (or every move when in check), until nothing is left to take
+    private int quiescence(int ply, int alpha, int beta) {
+        if (++nodes % CHECK_INTERVAL == 0) checkLimits();
+        if (stopped) return 0;
+
+        if (ply >= MAX_PLY) return Evaluator.evaluate(position);
+        if (Bitboard.count(position.getOccupancy()) <= tablebase.getMaxPieces()) {
+            TablebaseResult result = tablebase.probe(board);
+            if (result != null) return tablebaseScore(result, ply);
+        }
+
+        boolean inCheck = board.inCheck(position.getSideToMove());
+        MoveList moves = moveLists[ply];
+        int bestScore;
+
+        if (inCheck) {
+            // every reply has to be looked at, standing still isn't an option
+            MoveGenerator.generateLegalMoves(board, moves);
+            if (moves.isEmpty()) return -MATE + ply;
+            bestScore = -INFINITY;
+        } else {
+            // the side to move can usually do at least as well as the static score by not capturing
+            int standPat = Evaluator.evaluate(position);
+            if (standPat >= beta) return standPat;
+            if (standPat > alpha) alpha = standPat;
+            bestScore = standPat;
+
+            MoveGenerator.generateCaptures(board, moves);
+        }
+
+        scoreMoves(moves, ply, Move.NONE);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = pickMove(moves, ply, i);
+
+            // only losing captures score below 0, and they are all that is left
+            if (!inCheck && moveScores[ply][i] < 0) break;
+
+            board.makeMove(move);
+            int score = -quiescence(ply + 1, -beta, -alpha);
+            board.unmakeMove(move);
+
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) alpha = score;
+            }
+            if (score >= beta) break;
+        }
+
+        return bestScore;
+    }
+
+    private void checkLimits() {
+        if (stopRequested || nodes >= maxNodes || System.nanoTime() >= deadline) stopped = true;
+    }
+
+    // a known win or loss scores like the mate it leads to. without the distance to mate it
+    // scores below every mate the search can find, and wins the fifty move rule draws barely count
+    private static int tablebaseScore(TablebaseResult result, int ply) {
+        boolean knowsMate = result.pliesToMate() != TablebaseResult.UNKNOWN;
+
+        return switch (result.wdl()) {
+            case WIN -> knowsMate ? MATE - ply - result.pliesToMate() : TABLEBASE_WIN - ply;
+            case LOSS -> knowsMate ? -MATE + ply + result.pliesToMate() : -TABLEBASE_WIN + ply;
+            case CURSED_WIN -> 1;
+            case BLESSED_LOSS -> -1;
+            case DRAW -> 0;
+        };
+    }
+
+    private boolean isCapture(int move) {
+        return Move.moveTypeOf(move) == Move.MoveType.EN_PASSANT || !position.isEmpty(Move.endSquare(move));
+    }
+
+    private void scoreMoves(MoveList moves, int ply, int hashMove) {
+        int[] scores = moveScores[ply];
+
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            int piece = position.pieceAt(Move.startSquare(move));
+
+            if (move == hashMove) {
+                scores[i] = HASH_MOVE_SCORE;
+            } else if (isCapture(move)) {
+                // an en passant victim isn't on the end square, but it is always a pawn
+                int victim = position.pieceAt(Move.endSquare(move));
+                int victimType = (victim == Position.EMPTY ? PieceType.PAWN.ordinal() : victim % 6);
+                int mvvLva = victimType * 10 - piece % 6;
+
+                // taking something at least as valuable can't lose material, only work out the rest
+                boolean losing = victimType < piece % 6 && StaticExchange.evaluate(board, move) < 0;
+                scores[i] = (losing ? LOSING_CAPTURE_SCORE : CAPTURE_SCORE) + mvvLva;
+            } else if (Move.moveTypeOf(move) == Move.MoveType.PROMOTION_QUEEN) {
+                scores[i] = PROMOTION_SCORE;
+            } else if (move == killers[ply][0]) {
+                scores[i] = KILLER_SCORE;
+            } else if (move == killers[ply][1]) {
+                scores[i] = KILLER_SCORE - 1;
+            } else {
+                scores[i] = history[piece][Move.endSquare(move)];
+            }
+        }
+    }
+
+    // swaps the best scoring move left in the list into index, and returns it
+    private int pickMove(MoveList moves, int ply, int index) {
+        int[] scores = moveScores[ply];
+        int best = index;
+
+        for (int i = index + 1; i < moves.size(); i++) {
+            if (scores[i] > scores[best]) best = i;
+        }
+
+        moves.swap(index, best);
+        int temp = scores[index];
+        scores[index] = scores[best];
+        scores[best] = temp;
+
+        return moves.get(index);
+    }
+
+    private void rememberCutoff(int move, int piece, int depth, int ply) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+
+        int end = Move.endSquare(move);
+        history[piece][end] += depth * depth;
+
+        // keep history scores below the killers
+        if (history[piece][end] > MAX_HISTORY) {
+            for (int[] scores : history) {
+                for (int square = 0; square < 64; square++) scores[square] /= 2;
+            }
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,13 @@
+package com.brianwehrle.chess.engine;
+
+// a search stops at whichever limit it reaches first
+public record SearchLimits(long timeMillis, long maxNodes, int maxDepth) {
+
+    public static SearchLimits ofTime(long timeMillis) {
+        return new SearchLimits(timeMillis, Long.MAX_VALUE, Search.MAX_PLY);
+    }
+
+    public static SearchLimits ofDepth(int maxDepth) {
+        return new SearchLimits(Long.MAX_VALUE, Long.MAX_VALUE, maxDepth);
+    }
+}
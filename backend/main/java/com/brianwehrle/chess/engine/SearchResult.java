@@ -0,0 +1,17 @@
+package com.brianwehrle.chess.engine;
+
+import com.brianwehrle.chess.models.Move;
+
+// bestMove is null if the side to move has no legal moves.
+// nodes are summed over all threads that took part
+public record SearchResult(Move bestMove, int score, int depth, long nodes, long timeMillis, int threads, long nodesPerSecond, boolean fromBook) {
+
+    public SearchResult(Move bestMove, int score, int depth, long nodes, long timeMillis, int threads) {
+        this(bestMove, score, depth, nodes, timeMillis, threads, nodes * 1000 / Math.max(1, timeMillis), false);
+    }
+
+    // a move played from the opening book, without searching
+    public static SearchResult bookMove(Move move) {
+        return new SearchResult(move, 0, 0, 0, 0, 0, 0, true);
+    }
+}
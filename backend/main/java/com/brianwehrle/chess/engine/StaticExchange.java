@@ -0,0 +1,102 @@
+package com.brianwehrle.chess.engine;
+
+import com.brianwehrle.chess.models.*;
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+
+/*
+    Static exchange evaluation: what a move wins or loses in centipawns if both sides
+    keep capturing on its end square with their least valuable piece, and either side
+    may stop when carrying on would lose more. Sliders behind a piece that captures
+    join in, since the attackers are worked out again after every capture.
+ */
+public final class StaticExchange {
+    // the king can take part, but never be taken
+    private static final int KING_VALUE = 10_000;
+
+    private static final PieceType[] TYPES = PieceType.values();
+
+    private StaticExchange() {}
+
+    public static int evaluate(Chessboard board, int move) {
+        Position position = board.getPosition();
+        int start = Move.startSquare(move);
+        int end = Move.endSquare(move);
+        Move.MoveType moveType = Move.moveTypeOf(move);
+        int[] gain = new int[32];
+        int depth = 0;
+
+        long occupied = position.getOccupancy();
+        int victim = position.pieceAt(end);
+        gain[0] = (victim == Position.EMPTY ? 0 : value(Position.typeOf(victim)));
+
+        // the captured pawn isn't on the end square
+        if (moveType == Move.MoveType.EN_PASSANT) {
+            int capturedPawn = Bitboard.square(Bitboard.row(start), Bitboard.col(end));
+            occupied ^= Bitboard.bit(capturedPawn);
+            gain[0] = value(PieceType.PAWN);
+        }
+
+        PieceType attacker = Position.typeOf(position.pieceAt(start));
+        if (isPromotion(moveType)) {
+            attacker = promotedType(moveType);
+            gain[0] += value(attacker) - value(PieceType.PAWN);
+        }
+
+        Color side = Position.colorOf(position.pieceAt(start));
+        long from = Bitboard.bit(start);
+
+        while (true) {
+            depth++;
+            // what the side that just captured stands to make if the piece it captured with is taken
+            gain[depth] = value(attacker) - gain[depth - 1];
+
+            // neither side can gain by carrying on
+            if (Math.max(-gain[depth - 1], gain[depth]) < 0) break;
+
+            occupied ^= from;
+            side = (side == Color.WHITE ? Color.BLACK : Color.WHITE);
+            long attackers = board.attackersOf(end, occupied) & occupied;
+            long ours = attackers & position.getOccupancy(side);
+            if (ours == 0) break;
+
+            from = Bitboard.EMPTY;
+            for (PieceType type : TYPES) {
+                long pieces = ours & position.getBitboard(side, type);
+                if (pieces != 0) {
+                    from = pieces & -pieces;
+                    attacker = type;
+                    break;
+                }
+            }
+
+            // the king can't capture into a square the other side still attacks
+            if (attacker == PieceType.KING && (attackers & ~ours) != 0) break;
+
+            if (depth == gain.length - 1) break;
+        }
+
+        while (--depth > 0) {
+            gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+        }
+
+        return gain[0];
+    }
+
+    private static int value(PieceType type) {
+        return type == PieceType.KING ? KING_VALUE : type.getValue() * 100;
+    }
+
+    private static boolean isPromotion(Move.MoveType moveType) {
+        return promotedType(moveType) != null;
+    }
+
+    private static PieceType promotedType(Move.MoveType moveType) {
+        return switch (moveType) {
+            case PROMOTION_KNIGHT -> PieceType.KNIGHT;
+            case PROMOTION_BISHOP -> PieceType.BISHOP;
+            case PROMOTION_ROOK -> PieceType.ROOK;
+            case PROMOTION_QUEEN -> PieceType.QUEEN;
+            default -> null;
+        };
+    }
+}
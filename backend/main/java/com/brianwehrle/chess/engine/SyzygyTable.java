@@ -0,0 +1,731 @@
+package com.brianwehrle.chess.engine;
+
+import com.brianwehrle.chess.models.Bitboard;
+import com.brianwehrle.chess.models.Color;
+import com.brianwehrle.chess.models.Position;
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+    One Syzygy tablebase file, memory mapped: .rtbw holds win/draw/loss for both sides to move,
+    .rtbz the distance to zeroing (plies to the next capture or pawn move that keeps the result)
+    for one side to move. The file is named after its ending with the stronger side first,
+    like KRPvKR, and positions with the stronger side as black are looked up mirrored.
+
+    A position's index is built from its pieces' squares, with mirroring to cut out symmetric
+    positions: pawnless endings put the first piece in the a1-d1-d4 triangle and encode the
+    two kings together (462 ways) or the first three unique pieces together (31332 ways),
+    pawn endings keep one table per file of the leading pawn, a to d. The remaining pieces
+    are encoded group by group of identical pieces as combinations of the squares left.
+
+    Values are Huffman coded symbols that each expand, by recursive pairing, into a run of
+    values. They are split in blocks, and a sparse index gives the block of every span-th
+    value, so finding a value decodes at most one block.
+
+    The index and decompression follow the reference prober's, to read the published files.
+ */
+final class SyzygyTable {
+    static final int MAX_PIECES = 7;
+    // a DTZ table only has one side to move, the caller has to look one move ahead
+    static final int WRONG_SIDE = Integer.MAX_VALUE;
+
+    private static final byte[] WDL_MAGIC = {0x71, (byte) 0xE8, 0x23, 0x5D};
+    private static final byte[] DTZ_MAGIC = {(byte) 0xD7, 0x66, 0x0C, (byte) 0xA5};
+
+    // flags of each PairsData
+    private static final int STM = 1;
+    private static final int MAPPED = 2;
+    private static final int WIN_PLIES = 4;
+    private static final int LOSS_PLIES = 8;
+    private static final int WIDE = 16;
+    private static final int SINGLE_VALUE = 128;
+
+    // where in a DTZ map the values for a loss, blessed loss, draw, cursed win and win start
+    private static final int[] WDL_MAP = {1, 3, 0, 2, 0};
+
+    // the names in files, by PieceType ordinal
+    private static final String PIECE_LETTERS = "PNBRQK";
+
+    private static final int[] MAP_PAWNS = new int[64];
+    private static final int[] MAP_B1H1H7 = new int[64];
+    private static final int[] MAP_A1D1D4 = new int[64];
+    private static final int[][] MAP_KK = new int[10][64];
+    private static final long[][] BINOMIAL = new long[MAX_PIECES][64];
+    private static final int[][] LEAD_PAWN_INDEX = new int[MAX_PIECES][64];
+    private static final int[][] LEAD_PAWNS_SIZE = new int[MAX_PIECES][4];
+
+    static {
+        int code = 0;
+        for (int square = 0; square < 64; square++) {
+            if (offDiagonal(square) < 0) MAP_B1H1H7[square] = code++;
+        }
+
+        // below the diagonal first, then the diagonal itself
+        code = 0;
+        int[] diagonal = new int[4];
+        int diagonalCount = 0;
+        for (int square = 0; square <= 27; square++) {
+            if (Bitboard.col(square) > 3) continue;
+
+            if (offDiagonal(square) < 0) {
+                MAP_A1D1D4[square] = code++;
+            } else if (offDiagonal(square) == 0) {
+                diagonal[diagonalCount++] = square;
+            }
+        }
+        for (int square : diagonal) MAP_A1D1D4[square] = code++;
+
+        // both kings, the first in the triangle and the second not above the diagonal when the
+        // first is on it. both on the diagonal come last
+        code = 0;
+        int[][] bothOnDiagonal = new int[64][];
+        int bothCount = 0;
+        for (int index = 0; index < 10; index++) {
+            for (int first = 0; first <= 27; first++) {
+                if (MAP_A1D1D4[first] != index || (index == 0 && first != 1)) continue;
+
+                for (int second = 0; second < 64; second++) {
+                    if (second == first || Math.abs(Bitboard.row(first) - Bitboard.row(second)) <= 1
+                            && Math.abs(Bitboard.col(first) - Bitboard.col(second)) <= 1) continue;
+
+                    if (offDiagonal(first) == 0 && offDiagonal(second) > 0) continue;
+
+                    if (offDiagonal(first) == 0 && offDiagonal(second) == 0) {
+                        bothOnDiagonal[bothCount++] = new int[] {index, second};
+                    } else {
+                        MAP_KK[index][second] = code++;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < bothCount; i++) MAP_KK[bothOnDiagonal[i][0]][bothOnDiagonal[i][1]] = code++;
+
+        BINOMIAL[0][0] = 1;
+        for (int n = 1; n < 64; n++) {
+            for (int k = 0; k < MAX_PIECES && k <= n; k++) {
+                BINOMIAL[k][n] = (k > 0 ? BINOMIAL[k - 1][n - 1] : 0) + (k < n ? BINOMIAL[k][n - 1] : 0);
+            }
+        }
+
+        // the leading pawn is the one with the highest value, nearest the edge and then lowest,
+        // and its value is how many squares are left for the others
+        int available = 47;
+        for (int leadPawns = 1; leadPawns < MAX_PIECES; leadPawns++) {
+            for (int file = 0; file < 4; file++) {
+                int index = 0;
+
+                for (int row = 1; row <= 6; row++) {
+                    int square = Bitboard.square(row, file);
+                    if (leadPawns == 1) {
+                        MAP_PAWNS[square] = available--;
+                        MAP_PAWNS[square ^ 7] = available--;
+                    }
+                    LEAD_PAWN_INDEX[leadPawns][square] = index;
+                    index += (int) BINOMIAL[leadPawns - 1][MAP_PAWNS[square]];
+                }
+                LEAD_PAWNS_SIZE[leadPawns][file] = index;
+            }
+        }
+    }
+
+    // how one side to move of one file (one table per lead pawn file in pawn endings) is stored
+    private static final class Pairs {
+        private int flags;
+        private int minSymLength;
+        private long blockSize;
+        private long span;
+        private long lowestSymbol;
+        private long tree;
+        private long sparseIndex;
+        private long sparseIndexSize;
+        private long blockLengths;
+        private long blockLengthsSize;
+        private long blockCount;
+        private long data;
+        private long[] base64;
+        // how many values each symbol expands into, minus one
+        private int[] symbolLengths;
+        private final int[] pieces = new int[MAX_PIECES];
+        private final int[] groupLengths = new int[MAX_PIECES + 1];
+        private final long[] groupIndex = new long[MAX_PIECES + 1];
+        // DTZ only, where each result's values start in the map
+        private final long[] mapIndex = new long[4];
+    }
+
+    private final Data file;
+    private final boolean dtz;
+    private final long key;
+    private final boolean symmetric;
+    private final int pieceCount;
+    private final boolean hasPawns;
+    private final boolean hasUniquePieces;
+    // pawns of the leading color, the side with fewer pawns if both have some, and of the other
+    private final int[] pawnCount = new int[2];
+    private final Pairs[][] pairs;
+
+    private SyzygyTable(Data file, String name, boolean dtz) throws IOException {
+        this.file = file;
+        this.dtz = dtz;
+
+        String[] sides = name.split("v");
+        int[] white = counts(sides[0]);
+        int[] black = counts(sides[1]);
+        this.key = materialKey(white, black);
+        this.symmetric = key == materialKey(black, white);
+        this.pieceCount = name.length() - 1;
+        this.hasPawns = white[0] + black[0] > 0;
+
+        boolean unique = false;
+        for (int type = 0; type < 5; type++) unique |= white[type] == 1 || black[type] == 1;
+        this.hasUniquePieces = unique;
+
+        boolean whiteLeads = black[0] == 0 || (white[0] > 0 && black[0] >= white[0]);
+        pawnCount[0] = (whiteLeads ? white[0] : black[0]);
+        pawnCount[1] = (whiteLeads ? black[0] : white[0]);
+
+        byte[] magic = (dtz ? DTZ_MAGIC : WDL_MAGIC);
+        for (int i = 0; i < 4; i++) {
+            if (file.u8(i) != (magic[i] & 0xFF)) throw new IOException(name + " isn't a Syzygy " + (dtz ? "DTZ" : "WDL") + " table");
+        }
+
+        int sideCount = (!dtz && !symmetric ? 2 : 1);
+        int fileCount = (hasPawns ? 4 : 1);
+        this.pairs = new Pairs[sideCount][fileCount];
+        read(sideCount, fileCount);
+    }
+
+    static SyzygyTable open(Path path, String name, boolean dtz) throws IOException {
+        return new SyzygyTable(Data.map(path), name, dtz);
+    }
+
+    // identifies the pieces on the board, kings aside, like the ending of a table with white first
+    static long materialKey(Position position) {
+        long key = 0L;
+
+        for (PieceType type : PieceType.values()) {
+            if (type == PieceType.KING) continue;
+
+            key += (long) Bitboard.count(position.getBitboard(Color.WHITE, type)) << (4 * type.ordinal());
+            key += (long) Bitboard.count(position.getBitboard(Color.BLACK, type)) << (4 * type.ordinal() + 20);
+        }
+
+        return key;
+    }
+
+    // both ways round, white first then black first
+    static long[] materialKeys(String name) {
+        String[] sides = name.split("v");
+        int[] white = counts(sides[0]);
+        int[] black = counts(sides[1]);
+
+        return new long[] {materialKey(white, black), materialKey(black, white)};
+    }
+
+    static int pieceCount(String name) {
+        return name.length() - 1;
+    }
+
+    // win/draw/loss from -2 (loss) to 2 (win), or for a DTZ table the plies to zeroing for the
+    // result wdl, or WRONG_SIDE. materialKey is the position's, to tell if black is the stronger side
+    int probe(Position position, long materialKey, int wdl) {
+        int[] squares = new int[MAX_PIECES];
+        int[] pieces = new int[MAX_PIECES];
+        int size = 0;
+
+        // the table has white as the stronger side, and only white to move when both sides are the same
+        boolean blackToMove = position.getSideToMove() == Color.BLACK;
+        boolean flip = materialKey != key || (symmetric && blackToMove);
+        int flipColor = (flip ? 8 : 0);
+        int flipSquares = (flip ? 56 : 0);
+        int stm = (flip ^ blackToMove ? 1 : 0);
+
+        int leadPawnCount = 0;
+        long leadPawns = 0L;
+        int tableFile = 0;
+        if (hasPawns) {
+            Color leadColor = ((pairs[0][0].pieces[0] ^ flipColor) & 8) == 0 ? Color.WHITE : Color.BLACK;
+            leadPawns = position.getBitboard(leadColor, PieceType.PAWN);
+
+            for (long pawns = leadPawns; pawns != 0; pawns = Bitboard.removeFirst(pawns)) {
+                squares[size++] = Bitboard.first(pawns) ^ flipSquares;
+            }
+            leadPawnCount = size;
+
+            int lead = 0;
+            for (int i = 1; i < leadPawnCount; i++) {
+                if (MAP_PAWNS[squares[i]] > MAP_PAWNS[squares[lead]]) lead = i;
+            }
+            swap(squares, 0, lead);
+
+            int col = Bitboard.col(squares[0]);
+            tableFile = Math.min(col, 7 - col);
+        }
+
+        if (dtz && !storesSide(stm, tableFile)) return WRONG_SIDE;
+
+        for (long rest = position.getOccupancy() ^ leadPawns; rest != 0; rest = Bitboard.removeFirst(rest)) {
+            int square = Bitboard.first(rest);
+            squares[size] = square ^ flipSquares;
+            pieces[size++] = code(position.pieceAt(square)) ^ flipColor;
+        }
+
+        Pairs d = pairs(stm, tableFile);
+
+        // same order as the table's pieces
+        for (int i = leadPawnCount; i < size - 1; i++) {
+            for (int j = i + 1; j < size; j++) {
+                if (d.pieces[i] == pieces[j]) {
+                    swap(pieces, i, j);
+                    swap(squares, i, j);
+                    break;
+                }
+            }
+        }
+
+        // the first piece goes on files a to d
+        if (Bitboard.col(squares[0]) > 3) {
+            for (int i = 0; i < size; i++) squares[i] ^= 7;
+        }
+
+        long index;
+        if (hasPawns) {
+            index = LEAD_PAWN_INDEX[leadPawnCount][squares[0]];
+
+            sortByMapPawns(squares, 1, leadPawnCount);
+            for (int i = 1; i < leadPawnCount; i++) index += BINOMIAL[i][MAP_PAWNS[squares[i]]];
+        } else {
+            index = leadingGroupIndex(d, squares, size);
+        }
+
+        index *= d.groupIndex[0];
+
+        // then each group of identical pieces, as a combination of the squares the groups before left
+        boolean remainingPawns = hasPawns && pawnCount[1] > 0;
+        int groupStart = d.groupLengths[0];
+        for (int next = 1; d.groupLengths[next] != 0; next++) {
+            int length = d.groupLengths[next];
+            Arrays.sort(squares, groupStart, groupStart + length);
+
+            long n = 0;
+            for (int i = 0; i < length; i++) {
+                int square = squares[groupStart + i];
+                int adjust = 0;
+                for (int j = 0; j < groupStart; j++) {
+                    if (square > squares[j]) adjust++;
+                }
+                n += BINOMIAL[i + 1][square - adjust - (remainingPawns ? 8 : 0)];
+            }
+
+            remainingPawns = false;
+            index += n * d.groupIndex[next];
+            groupStart += length;
+        }
+
+        int value = decompress(d, index);
+        return dtz ? dtzPlies(tableFile, value, wdl) : value - 2;
+    }
+
+    // pawnless endings, the first piece into the a1-d1-d4 triangle and below the diagonal
+    private long leadingGroupIndex(Pairs d, int[] squares, int size) {
+        if (Bitboard.row(squares[0]) > 3) {
+            for (int i = 0; i < size; i++) squares[i] ^= 56;
+        }
+
+        for (int i = 0; i < d.groupLengths[0]; i++) {
+            if (offDiagonal(squares[i]) == 0) continue;
+
+            if (offDiagonal(squares[i]) > 0) {
+                for (int j = i; j < size; j++) squares[j] = ((squares[j] >>> 3) | (squares[j] << 3)) & 63;
+            }
+            break;
+        }
+
+        if (!hasUniquePieces) return MAP_KK[MAP_A1D1D4[squares[0]]][squares[1]];
+
+        int adjust1 = (squares[1] > squares[0] ? 1 : 0);
+        int adjust2 = (squares[2] > squares[0] ? 1 : 0) + (squares[2] > squares[1] ? 1 : 0);
+
+        if (offDiagonal(squares[0]) != 0) {
+            return ((long) MAP_A1D1D4[squares[0]] * 63 + (squares[1] - adjust1)) * 62 + squares[2] - adjust2;
+        }
+        if (offDiagonal(squares[1]) != 0) {
+            return (6 * 63 + Bitboard.row(squares[0]) * 28 + MAP_B1H1H7[squares[1]]) * 62L + squares[2] - adjust2;
+        }
+        if (offDiagonal(squares[2]) != 0) {
+            return 6 * 63 * 62 + 4 * 28 * 62 + Bitboard.row(squares[0]) * 7 * 28
+                    + (Bitboard.row(squares[1]) - adjust1) * 28 + MAP_B1H1H7[squares[2]];
+        }
+        return 6 * 63 * 62 + 4 * 28 * 62 + 4 * 7 * 28 + Bitboard.row(squares[0]) * 7 * 6
+                + (Bitboard.row(squares[1]) - adjust1) * 6 + Bitboard.row(squares[2]) - adjust2;
+    }
+
+    private Pairs pairs(int stm, int tableFile) {
+        return pairs[dtz ? 0 : stm][tableFile];
+    }
+
+    private boolean storesSide(int stm, int tableFile) {
+        return (pairs[0][tableFile].flags & STM) == stm || (symmetric && !hasPawns);
+    }
+
+    // DTZ values are stored by how often they come up, and in moves rather than plies where that's enough
+    private int dtzPlies(int tableFile, int value, int wdl) {
+        Pairs d = pairs[0][tableFile];
+
+        if ((d.flags & MAPPED) != 0) {
+            long start = d.mapIndex[WDL_MAP[wdl + 2]];
+            value = ((d.flags & WIDE) != 0 ? file.u16(start + 2L * value) : file.u8(start + value));
+        }
+
+        if ((wdl == 2 && (d.flags & WIN_PLIES) == 0) || (wdl == -2 && (d.flags & LOSS_PLIES) == 0) || wdl == 1 || wdl == -1) {
+            value *= 2;
+        }
+
+        return value + 1;
+    }
+
+    private int decompress(Pairs d, long index) {
+        if ((d.flags & SINGLE_VALUE) != 0) return d.minSymLength;
+
+        // the sparse index has the block and offset of the value in the middle of each span
+        long k = index / d.span;
+        long block = file.u32(d.sparseIndex + 6 * k);
+        long offset = file.u16(d.sparseIndex + 6 * k + 4) + index % d.span - d.span / 2;
+
+        // a block holds its length + 1 values
+        while (offset < 0) offset += blockLength(d, --block) + 1;
+        while (offset > blockLength(d, block)) offset -= blockLength(d, block++) + 1;
+
+        long position = d.data + block * d.blockSize;
+        long buffer = file.u64BigEndian(position);
+        position += 8;
+        int bits = 64;
+
+        // canonical Huffman, longer codes are numerically smaller
+        int symbol;
+        while (true) {
+            int length = 0;
+            while (Long.compareUnsigned(buffer, d.base64[length]) < 0) length++;
+
+            symbol = (int) ((buffer - d.base64[length]) >>> (64 - length - d.minSymLength));
+            symbol = (symbol + file.u16(d.lowestSymbol + 2L * length)) & 0xFFFF;
+
+            if (offset < d.symbolLengths[symbol] + 1) break;
+
+            offset -= d.symbolLengths[symbol] + 1;
+            length += d.minSymLength;
+            buffer <<= length;
+            bits -= length;
+
+            if (bits <= 32) {
+                bits += 32;
+                buffer |= file.u32BigEndian(position) << (64 - bits);
+                position += 4;
+            }
+        }
+
+        // expand the pairs down to the value
+        while (d.symbolLengths[symbol] != 0) {
+            int left = left(d, symbol);
+
+            if (offset < d.symbolLengths[left] + 1) {
+                symbol = left;
+            } else {
+                offset -= d.symbolLengths[left] + 1;
+                symbol = right(d, symbol);
+            }
+        }
+
+        return left(d, symbol);
+    }
+
+    private int blockLength(Pairs d, long block) {
+        return file.u16(d.blockLengths + 2 * block);
+    }
+
+    // each tree entry is 3 bytes, the left symbol in the first 12 bits and the right in the other 12.
+    // a symbol that is a value has 0xFFF on the right and the value on the left
+    private int left(Pairs d, int symbol) {
+        long entry = d.tree + 3L * symbol;
+        return ((file.u8(entry + 1) & 0xF) << 8) | file.u8(entry);
+    }
+
+    private int right(Pairs d, int symbol) {
+        long entry = d.tree + 3L * symbol;
+        return (file.u8(entry + 2) << 4) | (file.u8(entry + 1) >>> 4);
+    }
+
+    private void read(int sideCount, int fileCount) throws IOException {
+        long position = 4;
+        if (((file.u8(position) & 2) != 0) != hasPawns) throw new IOException("Syzygy table doesn't match its name");
+        position++;
+
+        boolean bothHavePawns = hasPawns && pawnCount[1] > 0;
+        for (int f = 0; f < fileCount; f++) {
+            for (int side = 0; side < sideCount; side++) pairs[side][f] = new Pairs();
+
+            int first = file.u8(position);
+            int second = (bothHavePawns ? file.u8(position + 1) : 0);
+            int[][] order = {
+                    {first & 0xF, bothHavePawns ? second & 0xF : 0xF},
+                    {first >>> 4, bothHavePawns ? second >>> 4 : 0xF}
+            };
+            position += (bothHavePawns ? 2 : 1);
+
+            for (int k = 0; k < pieceCount; k++, position++) {
+                for (int side = 0; side < sideCount; side++) {
+                    pairs[side][f].pieces[k] = (side == 0 ? file.u8(position) & 0xF : file.u8(position) >>> 4);
+                }
+            }
+
+            for (int side = 0; side < sideCount; side++) setGroups(pairs[side][f], order[side], f);
+        }
+        position += position & 1;
+
+        for (int f = 0; f < fileCount; f++) {
+            for (int side = 0; side < sideCount; side++) position = readSizes(pairs[side][f], position);
+        }
+
+        if (dtz) {
+            for (int f = 0; f < fileCount; f++) {
+                Pairs d = pairs[0][f];
+                if ((d.flags & MAPPED) == 0) continue;
+
+                if ((d.flags & WIDE) != 0) {
+                    position += position & 1;
+                    for (int i = 0; i < 4; i++) {
+                        d.mapIndex[i] = position + 2;
+                        position += 2L * file.u16(position) + 2;
+                    }
+                } else {
+                    for (int i = 0; i < 4; i++) {
+                        d.mapIndex[i] = position + 1;
+                        position += file.u8(position) + 1;
+                    }
+                }
+            }
+            position += position & 1;
+        }
+
+        for (int f = 0; f < fileCount; f++) {
+            for (int side = 0; side < sideCount; side++) {
+                pairs[side][f].sparseIndex = position;
+                position += pairs[side][f].sparseIndexSize * 6;
+            }
+        }
+
+        for (int f = 0; f < fileCount; f++) {
+            for (int side = 0; side < sideCount; side++) {
+                pairs[side][f].blockLengths = position;
+                position += pairs[side][f].blockLengthsSize * 2;
+            }
+        }
+
+        for (int f = 0; f < fileCount; f++) {
+            for (int side = 0; side < sideCount; side++) {
+                position = (position + 0x3F) & ~0x3FL;
+                pairs[side][f].data = position;
+                position += pairs[side][f].blockCount * pairs[side][f].blockSize;
+            }
+        }
+
+        if (position > file.size()) throw new IOException("Syzygy table is truncated");
+    }
+
+    // splits the pieces into groups of identical pieces, and works out each group's multiplier.
+    // order says where the leading group, and the other side's pawns, come in the index
+    private void setGroups(Pairs d, int[] order, int tableFile) {
+        int n = 0;
+        int firstLength = (hasPawns ? 0 : hasUniquePieces ? 3 : 2);
+        d.groupLengths[n] = 1;
+
+        for (int i = 1; i < pieceCount; i++) {
+            if (--firstLength > 0 || d.pieces[i] == d.pieces[i - 1]) {
+                d.groupLengths[n]++;
+            } else {
+                d.groupLengths[++n] = 1;
+            }
+        }
+        d.groupLengths[++n] = 0;
+
+        boolean bothHavePawns = hasPawns && pawnCount[1] > 0;
+        int next = (bothHavePawns ? 2 : 1);
+        int freeSquares = 64 - d.groupLengths[0] - (bothHavePawns ? d.groupLengths[1] : 0);
+        long index = 1;
+
+        for (int k = 0; next < n || k == order[0] || k == order[1]; k++) {
+            if (k == order[0]) {
+                d.groupIndex[0] = index;
+                index *= (hasPawns ? LEAD_PAWNS_SIZE[d.groupLengths[0]][tableFile] : hasUniquePieces ? 31332 : 462);
+            } else if (k == order[1]) {
+                d.groupIndex[1] = index;
+                index *= BINOMIAL[d.groupLengths[1]][48 - d.groupLengths[0]];
+            } else {
+                d.groupIndex[next] = index;
+                index *= BINOMIAL[d.groupLengths[next]][freeSquares];
+                freeSquares -= d.groupLengths[next++];
+            }
+        }
+
+        d.groupIndex[n] = index;
+    }
+
+    private long readSizes(Pairs d, long position) {
+        d.flags = file.u8(position++);
+
+        if ((d.flags & SINGLE_VALUE) != 0) {
+            d.minSymLength = file.u8(position++);
+            return position;
+        }
+
+        int groups = 0;
+        while (d.groupLengths[groups] != 0) groups++;
+        long size = d.groupIndex[groups];
+
+        d.blockSize = 1L << file.u8(position++);
+        d.span = 1L << file.u8(position++);
+        d.sparseIndexSize = (size + d.span - 1) / d.span;
+        int padding = file.u8(position++);
+        d.blockCount = file.u32(position);
+        position += 4;
+        // padded so the sparse index never points past the end
+        d.blockLengthsSize = d.blockCount + padding;
+
+        int maxSymLength = file.u8(position++);
+        d.minSymLength = file.u8(position++);
+        d.lowestSymbol = position;
+
+        // the first code of each length, from the longest up, then left aligned in 64 bits
+        int lengths = maxSymLength - d.minSymLength + 1;
+        d.base64 = new long[lengths];
+        for (int i = lengths - 2; i >= 0; i--) {
+            d.base64[i] = (d.base64[i + 1] + file.u16(position + 2L * i) - file.u16(position + 2L * (i + 1))) / 2;
+        }
+        for (int i = 0; i < lengths; i++) d.base64[i] <<= 64 - i - d.minSymLength;
+        position += 2L * lengths;
+
+        int symbols = file.u16(position);
+        position += 2;
+        d.tree = position;
+        d.symbolLengths = new int[symbols];
+
+        boolean[] visited = new boolean[symbols];
+        for (int symbol = 0; symbol < symbols; symbol++) {
+            if (!visited[symbol]) d.symbolLengths[symbol] = symbolLength(d, symbol, visited);
+        }
+
+        return position + 3L * symbols + (symbols & 1);
+    }
+
+    private int symbolLength(Pairs d, int symbol, boolean[] visited) {
+        visited[symbol] = true;
+
+        int right = right(d, symbol);
+        if (right == 0xFFF) return 0;
+
+        int left = left(d, symbol);
+        if (!visited[left]) d.symbolLengths[left] = symbolLength(d, left, visited);
+        if (!visited[right]) d.symbolLengths[right] = symbolLength(d, right, visited);
+
+        return d.symbolLengths[left] + d.symbolLengths[right] + 1;
+    }
+
+    private static int[] counts(String side) {
+        int[] counts = new int[6];
+        for (char letter : side.toCharArray()) counts[PIECE_LETTERS.indexOf(letter)]++;
+
+        return counts;
+    }
+
+    private static long materialKey(int[] white, int[] black) {
+        long key = 0L;
+        for (int type = 0; type < 5; type++) {
+            key += (long) white[type] << (4 * type);
+            key += (long) black[type] << (4 * type + 20);
+        }
+
+        return key;
+    }
+
+    // pieces in the files are 1 (pawn) to 6 (king), plus 8 for black
+    private static int code(int piece) {
+        return Position.typeOf(piece).ordinal() + 1 + (Position.colorOf(piece) == Color.BLACK ? 8 : 0);
+    }
+
+    // rank minus file, 0 on the a1-h8 diagonal and negative below it
+    private static int offDiagonal(int square) {
+        return Bitboard.row(square) - Bitboard.col(square);
+    }
+
+    private static void sortByMapPawns(int[] squares, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && MAP_PAWNS[squares[j]] < MAP_PAWNS[squares[j - 1]]; j--) swap(squares, j, j - 1);
+        }
+    }
+
+    private static void swap(int[] values, int i, int j) {
+        int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    // the file mapped in chunks, since a buffer can't be bigger than 2GB
+    private static final class Data {
+        private static final int CHUNK_BITS = 30;
+        private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+        private final ByteBuffer[] chunks;
+        private final long size;
+
+        private Data(ByteBuffer[] chunks, long size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        // the mapping stays valid after the channel is closed, until the buffers are collected
+        private static Data map(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                // every table is padded to 16 bytes past a multiple of 64
+                if (size % 64 != 16) throw new IOException(path + " is corrupt");
+
+                ByteBuffer[] chunks = new ByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+                for (int i = 0; i < chunks.length; i++) {
+                    long start = (long) i << CHUNK_BITS;
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_MASK + 1, size - start));
+                }
+                return new Data(chunks, size);
+            }
+        }
+
+        private long size() {
+            return size;
+        }
+
+        private int u8(long position) {
+            return chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & CHUNK_MASK)) & 0xFF;
+        }
+
+        // little endian
+        private int u16(long position) {
+            return u8(position) | u8(position + 1) << 8;
+        }
+
+        private long u32(long position) {
+            return (u16(position) | (long) u16(position + 2) << 16);
+        }
+
+        private long u32BigEndian(long position) {
+            return (long) u8(position) << 24 | u8(position + 1) << 16 | u8(position + 2) << 8 | u8(position + 3);
+        }
+
+        private long u64BigEndian(long position) {
+            return u32BigEndian(position) << 32 | u32BigEndian(position + 4);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.brianwehrle.chess.engine;
+
+import com.brianwehrle.chess.models.Bitboard;
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.models.MoveGenerator;
+import com.brianwehrle.chess.models.MoveList;
+import com.brianwehrle.chess.models.Position;
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/*
+    Syzygy tablebase files, the .rtbw (win/draw/loss) and .rtbz (distance to zeroing) files
+    in a set of directories, up to six pieces (seven piece files are read too, but aren't
+    usually worth the disk).
+
+    The directories are only listed when this is made. A file is opened and memory mapped the
+    first time its ending is probed, and the least recently used ones are closed again once
+    more than maxOpenFiles are open, so the operating system decides what stays in memory.
+
+    The tables leave out positions where the side to move can capture, and for DTZ one of the
+    sides to move, so probing plays out captures (and pawn moves for DTZ) first, down into
+    smaller endings. Endings without a file fall back on the fallback tablebase, which knows
+    the smallest ones. Positions with castling rights aren't in the tables.
+ */
+public final class SyzygyTablebase implements Tablebase {
+    private static final Pattern NAME = Pattern.compile("K[QRBNP]*vK[QRBNP]*");
+    private static final String WDL_SUFFIX = ".rtbw";
+    private static final String DTZ_SUFFIX = ".rtbz";
+
+    // a probe needed a table that isn't there
+    private static final int FAILED = Integer.MIN_VALUE;
+
+    private static final int WIN = 2;
+    private static final int CURSED_WIN = 1;
+    private static final int DRAW = 0;
+    private static final int BLESSED_LOSS = -1;
+    private static final int LOSS = -2;
+
+    // the ending's name for each material key, both ways round
+    private final Map<Long, String> names = new HashMap<>();
+    private final Map<String, Path> files = new HashMap<>();
+    private final Map<String, SyzygyTable> open;
+    private final Tablebase fallback;
+    private final int maxPieces;
+
+    public SyzygyTablebase(List<Path> directories, int maxOpenFiles, Tablebase fallback) throws IOException {
+        this.fallback = fallback;
+        this.open = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SyzygyTable> eldest) {
+                return size() > maxOpenFiles;
+            }
+        };
+
+        int largest = fallback.getMaxPieces();
+        for (Path directory : directories) {
+            try (Stream<Path> paths = Files.list(directory)) {
+                for (Path path : (Iterable<Path>) paths::iterator) {
+                    String fileName = path.getFileName().toString();
+                    if (!fileName.endsWith(WDL_SUFFIX) && !fileName.endsWith(DTZ_SUFFIX)) continue;
+
+                    String name = fileName.substring(0, fileName.length() - WDL_SUFFIX.length());
+                    if (!NAME.matcher(name).matches() || SyzygyTable.pieceCount(name) > SyzygyTable.MAX_PIECES) continue;
+
+                    // the first directory with a file wins
+                    files.putIfAbsent(fileName, path);
+                    if (fileName.endsWith(WDL_SUFFIX)) {
+                        for (long key : SyzygyTable.materialKeys(name)) names.putIfAbsent(key, name);
+                        largest = Math.max(largest, SyzygyTable.pieceCount(name));
+                    }
+                }
+            }
+        }
+        this.maxPieces = largest;
+    }
+
+    @Override
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    @Override
+    public TablebaseResult probe(Chessboard board) {
+        Position position = board.getPosition();
+        if (position.getCastlingRights() != 0 || Bitboard.count(position.getOccupancy()) > maxPieces) return null;
+
+        if (!names.containsKey(SyzygyTable.materialKey(position))) return fallbackProbe(board);
+
+        int wdl = probeWdl(board);
+        return (wdl == FAILED ? null : new TablebaseResult(toWdl(wdl), TablebaseResult.UNKNOWN));
+    }
+
+    // also with the distance to zeroing, in plies from the position. null if a file is missing
+    public TablebaseResult probeDtz(Chessboard board) {
+        Position position = board.getPosition();
+        if (position.getCastlingRights() != 0 || !names.containsKey(SyzygyTable.materialKey(position))) return null;
+
+        int wdl = probeWdl(board);
+        if (wdl == FAILED) return null;
+        if (wdl == DRAW) return TablebaseResult.DRAW;
+
+        int dtz = dtz(board);
+        return (dtz == FAILED ? null : new TablebaseResult(toWdl(wdl), TablebaseResult.UNKNOWN, Math.abs(dtz)));
+    }
+
+    // among the moves that keep the result, the one that reaches the next capture or pawn move
+    // soonest when winning and latest when losing, so the fifty move rule doesn't get in the way
+    @Override
+    public int bestMove(Chessboard board) {
+        Position position = board.getPosition();
+        if (position.getCastlingRights() != 0 || Bitboard.count(position.getOccupancy()) > maxPieces) return Move.NONE;
+
+        if (!names.containsKey(SyzygyTable.materialKey(position))) {
+            return Bitboard.count(position.getOccupancy()) <= fallback.getMaxPieces() ? fallback.bestMove(board) : Move.NONE;
+        }
+
+        int halfMoveClock = position.getHalfMoveClock();
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegalMoves(board, moves);
+
+        int bestMove = Move.NONE;
+        int bestRank = Integer.MIN_VALUE;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+
+            board.makeMove(move);
+            int dtz;
+            if (position.getHalfMoveClock() == 0) {
+                int wdl = probeWdl(board);
+                dtz = (wdl == FAILED ? FAILED : beforeZeroing(-wdl));
+            } else if (board.isRepetition()) {
+                dtz = 0;
+            } else {
+                dtz = dtz(board);
+                if (dtz != FAILED) dtz = -dtz + Integer.signum(-dtz);
+            }
+            if (dtz == 2 && isMate(board)) dtz = 1;
+            board.unmakeMove(move);
+
+            if (dtz == FAILED) return Move.NONE;
+
+            // wins the fifty move rule would draw are still better than draws, and so are
+            // losses it would save
+            int rank;
+            if (dtz > 0) {
+                rank = (dtz + halfMoveClock <= 100 ? 2000 - dtz : 1000 - dtz);
+            } else if (dtz < 0) {
+                rank = (-dtz + halfMoveClock <= 100 ? -2000 - dtz : -1000 - dtz);
+            } else {
+                rank = 0;
+            }
+
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestMove = move;
+            }
+        }
+
+        return bestMove;
+    }
+
+    private TablebaseResult fallbackProbe(Chessboard board) {
+        return Bitboard.count(board.getPosition().getOccupancy()) <= fallback.getMaxPieces() ? fallback.probe(board) : null;
+    }
+
+    private int probeWdl(Chessboard board) {
+        return search(board, false)[0];
+    }
+
+    // the result, and whether a capture (or pawn move, with zeroing) gets it. the table
+    // is only probed if no capture is already good enough
+    private int[] search(Chessboard board, boolean zeroing) {
+        Position position = board.getPosition();
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegalMoves(board, moves);
+
+        int bestValue = LOSS;
+        int tried = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            if (!isCapture(position, move) && (!zeroing || Move.pieceTypeOf(move) != PieceType.PAWN)) continue;
+            tried++;
+
+            board.makeMove(move);
+            int value = probeWdl(board);
+            board.unmakeMove(move);
+
+            if (value == FAILED) return new int[] {FAILED, 0};
+            if (-value > bestValue) {
+                bestValue = -value;
+                if (bestValue >= WIN) return new int[] {bestValue, 1};
+            }
+        }
+
+        boolean noMoreMoves = tried > 0 && tried == moves.size();
+        int value = (noMoreMoves ? bestValue : probeTable(board, false, 0));
+        if (value == FAILED) return new int[] {FAILED, 0};
+
+        if (bestValue >= value) return new int[] {bestValue, bestValue > DRAW || noMoreMoves ? 1 : 0};
+        return new int[] {value, 0};
+    }
+
+    // signed plies to zeroing, positive when winning
+    private int dtz(Chessboard board) {
+        int[] result = search(board, true);
+        int wdl = result[0];
+        if (wdl == FAILED) return FAILED;
+        if (wdl == DRAW) return 0;
+        if (result[1] == 1) return beforeZeroing(wdl);
+
+        int dtz = probeTable(board, true, wdl);
+        if (dtz == FAILED) return FAILED;
+        if (dtz != SyzygyTable.WRONG_SIDE) {
+            return (dtz + (wdl == CURSED_WIN || wdl == BLESSED_LOSS ? 100 : 0)) * Integer.signum(wdl);
+        }
+
+        // the table only has the other side to move, so look one move ahead
+        Position position = board.getPosition();
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegalMoves(board, moves);
+
+        int best = Integer.MAX_VALUE;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            boolean zeroingMove = isCapture(position, move) || Move.pieceTypeOf(move) == PieceType.PAWN;
+
+            board.makeMove(move);
+            int value;
+            if (zeroingMove) {
+                int reply = probeWdl(board);
+                value = (reply == FAILED ? FAILED : -beforeZeroing(reply));
+            } else {
+                value = dtz(board);
+                if (value != FAILED) value = -value;
+            }
+            if (value == 1 && isMate(board)) best = 1;
+            board.unmakeMove(move);
+
+            if (value == FAILED) return FAILED;
+
+            if (!zeroingMove) value += Integer.signum(value);
+            if (value < best && Integer.signum(value) == Integer.signum(wdl)) best = value;
+        }
+
+        // no moves at all is mate
+        return (best == Integer.MAX_VALUE ? -1 : best);
+    }
+
+    private int probeTable(Chessboard board, boolean dtz, int wdl) {
+        Position position = board.getPosition();
+        long key = SyzygyTable.materialKey(position);
+
+        String name = names.get(key);
+        if (name == null) {
+            if (dtz || Bitboard.count(position.getOccupancy()) == 2) return (dtz ? FAILED : DRAW);
+
+            TablebaseResult result = fallbackProbe(board);
+            return (result == null ? FAILED : fromWdl(result.wdl()));
+        }
+
+        SyzygyTable table = table(name + (dtz ? DTZ_SUFFIX : WDL_SUFFIX), name, dtz);
+        return (table == null ? FAILED : table.probe(position, key, wdl));
+    }
+
+    private synchronized SyzygyTable table(String fileName, String name, boolean dtz) {
+        SyzygyTable table = open.get(fileName);
+
+        if (table == null) {
+            Path path = files.get(fileName);
+            if (path == null) return null;
+
+            try {
+                table = SyzygyTable.open(path, name, dtz);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't open tablebase file " + path, e);
+            }
+            open.put(fileName, table);
+        }
+
+        return table;
+    }
+
+    private static boolean isCapture(Position position, int move) {
+        return Move.moveTypeOf(move) == Move.MoveType.EN_PASSANT || !position.isEmpty(Move.endSquare(move));
+    }
+
+    private static boolean isMate(Chessboard board) {
+        if (!board.inCheck(board.getPosition().getSideToMove())) return false;
+
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegalMoves(board, moves);
+        return moves.isEmpty();
+    }
+
+    // the distance to zeroing just before a zeroing move that gets the result wdl
+    private static int beforeZeroing(int wdl) {
+        return switch (wdl) {
+            case WIN -> 1;
+            case CURSED_WIN -> 101;
+            case BLESSED_LOSS -> -101;
+            case LOSS -> -1;
+            default -> 0;
+        };
+    }
+
+    private static TablebaseResult.Wdl toWdl(int wdl) {
+        return switch (wdl) {
+            case WIN -> TablebaseResult.Wdl.WIN;
+            case CURSED_WIN -> TablebaseResult.Wdl.CURSED_WIN;
+            case BLESSED_LOSS -> TablebaseResult.Wdl.BLESSED_LOSS;
+            case LOSS -> TablebaseResult.Wdl.LOSS;
+            default -> TablebaseResult.Wdl.DRAW;
+        };
+    }
+
+    private static int fromWdl(TablebaseResult.Wdl wdl) {
+        return switch (wdl) {
+            case WIN -> WIN;
+            case CURSED_WIN -> CURSED_WIN;
+            case DRAW -> DRAW;
+            case BLESSED_LOSS -> BLESSED_LOSS;
+            case LOSS -> LOSS;
+        };
+    }
+}
@@ -0,0 +1,21 @@
+package com.brianwehrle.chess.engine;
+
+import com.brianwehrle.chess.models.Chessboard;
+
+/*
+    Exact results for positions with few pieces left. The search scores positions from it
+    instead of searching them, and games report the outcome with best play once it's known.
+ */
+public interface Tablebase {
+
+    // positions with more pieces than this are never in the tablebase
+    int getMaxPieces();
+
+    // null if the position isn't in the tablebase. cheap enough to call at every node,
+    // the board is left as it was
+    TablebaseResult probe(Chessboard board);
+
+    // a move that keeps the best result and makes progress towards it, Move.NONE if
+    // the position isn't in the tablebase
+    int bestMove(Chessboard board);
+}
@@ -0,0 +1,24 @@
+package com.brianwehrle.chess.engine;
+
+// exact result for the side to move with best play. a table knows the distance to mate
+// (0 for a draw), or the distance to the next capture or pawn move on the way to the result
+// (dtz, 0 for a draw), or neither. whichever it doesn't know is UNKNOWN
+public record TablebaseResult(Wdl wdl, int pliesToMate, int dtz) {
+    public static final int UNKNOWN = -1;
+
+    public enum Wdl {
+        WIN,
+        // wins and losses that take more than fifty moves without a capture or pawn move,
+        // so they are drawn by the fifty move rule
+        CURSED_WIN,
+        DRAW,
+        BLESSED_LOSS,
+        LOSS
+    }
+
+    public static final TablebaseResult DRAW = new TablebaseResult(Wdl.DRAW, 0);
+
+    public TablebaseResult(Wdl wdl, int pliesToMate) {
+        this(wdl, pliesToMate, UNKNOWN);
+    }
+}
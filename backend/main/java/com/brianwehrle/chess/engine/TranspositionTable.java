@@ -0,0 +1,156 @@
+package com.brianwehrle.chess.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Fixed size hash table of search results, shared by every search without locks.
+
+    Each entry is two longs, the data and the position key XORed with the data.
+    A reader XORs them back together and only trusts the entry if that gives its own
+    key, so an entry torn by two threads writing at once just looks like a miss.
+
+    Data is packed as
+    bits 0-17 best move, 18-33 score + 32768, 34-41 depth, 42-43 bound, 44-51 generation.
+ */
+public class TranspositionTable {
+    public static final int EXACT = 1;
+    // score is at least the stored score (the search failed high)
+    public static final int LOWER = 2;
+    // score is at most the stored score (the search failed low)
+    public static final int UPPER = 3;
+
+    // no entry has bound 0, so 0 can mean "nothing found"
+    public static final long MISS = 0L;
+
+    private static final int BYTES_PER_ENTRY = 16;
+    // entries looked at to estimate how full the table is
+    private static final int FILL_SAMPLE = 1000;
+
+    public record Stats(int sizeMb, long entries, long probes, long hits, long collisions, long stores, int fillPermille) {
+        public double hitRate() {
+            return probes == 0 ? 0 : (double) hits / probes;
+        }
+    }
+
+    private final long[] table;
+    private final int sizeMb;
+    private final long mask;
+    private volatile int generation;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    public TranspositionTable(int sizeMb) {
+        if (sizeMb < 1) throw new IllegalArgumentException("Transposition table needs at least 1 MB");
+
+        // round down to a power of two entries, so the index is a mask of the key
+        long entries = Long.highestOneBit((long) sizeMb * 1024 * 1024 / BYTES_PER_ENTRY);
+        if (entries * 2 > Integer.MAX_VALUE - 8) entries = 1L << 29;
+
+        this.table = new long[(int) (entries * 2)];
+        this.sizeMb = sizeMb;
+        this.mask = entries - 1;
+    }
+
+    // call at the start of every search, so entries from old searches are replaced first
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        generation = 0;
+    }
+
+    // the entry data stored for key, or MISS
+    public long probe(long key) {
+        int index = index(key);
+        long data = table[index + 1];
+        probes.increment();
+
+        if (data != MISS && (table[index] ^ data) == key) {
+            hits.increment();
+            return data;
+        }
+        if (data != MISS) collisions.increment();
+
+        return MISS;
+    }
+
+    // score is from the point of view of the side to move, ply is the distance from the root
+    public void store(long key, int move, int score, int depth, int bound, int ply) {
+        int index = index(key);
+        long old = table[index + 1];
+        boolean samePosition = (table[index] ^ old) == key;
+
+        // keep deeper results from this search, unless this one is exact
+        if (old != MISS && generationOf(old) == generation && depth < depth(old) && bound != EXACT) return;
+
+        // a search that didn't find a best move shouldn't forget the one found before
+        if (move == 0 && samePosition) move = move(old);
+
+        long data = (move & 0x3FFFFL)
+                | (long) (scoreToTable(score, ply) + 32768) << 18
+                | (long) depth << 34
+                | (long) bound << 42
+                | (long) generation << 44;
+
+        table[index] = key ^ data;
+        table[index + 1] = data;
+        stores.increment();
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0x3FFFF);
+    }
+
+    public static int score(long data, int ply) {
+        return scoreFromTable((int) ((data >>> 18) & 0xFFFF) - 32768, ply);
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> 34) & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> 42) & 0x3);
+    }
+
+    public Stats getStats() {
+        int sample = (int) Math.min(FILL_SAMPLE, mask + 1);
+        int filled = 0;
+
+        for (int i = 0; i < sample; i++) {
+            long data = table[i * 2 + 1];
+            if (data != MISS && generationOf(data) == generation) filled++;
+        }
+
+        return new Stats(sizeMb, mask + 1, probes.sum(), hits.sum(), collisions.sum(), stores.sum(), filled * 1000 / sample);
+    }
+
+    private int index(long key) {
+        return (int) (key & mask) * 2;
+    }
+
+    private static int generationOf(long data) {
+        return (int) ((data >>> 44) & 0xFF);
+    }
+
+    // mate and tablebase scores are stored as distance from the entry's position, not the root
+    private static int scoreToTable(int score, int ply) {
+        if (score >= Search.DECISIVE) return score + ply;
+        if (score <= -Search.DECISIVE) return score - ply;
+
+        return score;
+    }
+
+    private static int scoreFromTable(int score, int ply) {
+        if (score >= Search.DECISIVE) return score - ply;
+        if (score <= -Search.DECISIVE) return score + ply;
+
+        return score;
+    }
+}
@@ -0,0 +1,15 @@
+package com.brianwehrle.chess.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.UUID;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class GameNotFoundException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public GameNotFoundException(UUID gameId) {
+        super("No game with id " + gameId);
+    }
+}
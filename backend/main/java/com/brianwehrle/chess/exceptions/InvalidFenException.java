@@ -0,0 +1,13 @@
+package com.brianwehrle.chess.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidFenException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public InvalidFenException(String fen, String reason) {
+        super("Invalid FEN \"" + fen + "\": " + reason);
+    }
+}
@@ -0,0 +1,126 @@
+package com.brianwehrle.chess.models;
+
+import com.brianwehrle.chess.models.pieces.King;
+import com.brianwehrle.chess.models.pieces.Knight;
+
+/*
+    Precomputed attack bitboards. Knights, kings and pawns are plain lookups,
+    sliding pieces walk a precomputed ray and cut it off at the first blocker.
+ */
+public final class Attacks {
+
+    // the first four point towards higher square indices, the last four towards lower ones
+    private static final Direction[] RAY_DIRECTIONS = {
+            new Direction(1, 0),
+            new Direction(0, 1),
+            new Direction(1, 1),
+            new Direction(-1, 1),
+            new Direction(-1, 0),
+            new Direction(0, -1),
+            new Direction(-1, -1),
+            new Direction(1, -1)
+    };
+    private static final int EAST = 0, NORTH = 1, NORTH_EAST = 2, NORTH_WEST = 3;
+    private static final int WEST = 4, SOUTH = 5, SOUTH_WEST = 6, SOUTH_EAST = 7;
+
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING = new long[64];
+    private static final long[][] PAWN = new long[2][64];
+    private static final long[][] RAYS = new long[8][64];
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final long[][] LINE = new long[64][64];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            int row = Bitboard.row(square);
+            int col = Bitboard.col(square);
+
+            for (Direction direction : Knight.DIRECTIONS) {
+                KNIGHT[square] |= step(row + direction.dy(), col + direction.dx());
+            }
+            for (Direction direction : King.DIRECTIONS) {
+                KING[square] |= step(row + direction.dy(), col + direction.dx());
+            }
+
+            PAWN[Color.WHITE.ordinal()][square] = step(row + 1, col - 1) | step(row + 1, col + 1);
+            PAWN[Color.BLACK.ordinal()][square] = step(row - 1, col - 1) | step(row - 1, col + 1);
+
+            for (int i = 0; i < RAY_DIRECTIONS.length; i++) {
+                Direction direction = RAY_DIRECTIONS[i];
+                for (int r = row + direction.dy(), c = col + direction.dx(); Bitboard.onBoard(r, c); r += direction.dy(), c += direction.dx()) {
+                    RAYS[i][square] |= Bitboard.bit(Bitboard.square(r, c));
+                }
+            }
+        }
+
+        // needs every ray filled in, so done after the loop above
+        for (int square = 0; square < 64; square++) {
+            for (int i = 0; i < RAY_DIRECTIONS.length; i++) {
+                int opposite = (i + 4) % 8;
+                long line = RAYS[i][square] | RAYS[opposite][square] | Bitboard.bit(square);
+
+                for (long ray = RAYS[i][square]; ray != 0; ray = Bitboard.removeFirst(ray)) {
+                    int other = Bitboard.first(ray);
+                    BETWEEN[square][other] = RAYS[i][square] & ~RAYS[i][other] & ~Bitboard.bit(other);
+                    LINE[square][other] = line;
+                }
+            }
+        }
+    }
+
+    private Attacks() {}
+
+    private static long step(int row, int col) {
+        return Bitboard.onBoard(row, col) ? Bitboard.bit(Bitboard.square(row, col)) : Bitboard.EMPTY;
+    }
+
+    public static long knightAttacks(int square) {
+        return KNIGHT[square];
+    }
+
+    public static long kingAttacks(int square) {
+        return KING[square];
+    }
+
+    // squares a pawn of the given color on square attacks
+    public static long pawnAttacks(Color color, int square) {
+        return PAWN[color.ordinal()][square];
+    }
+
+    public static long bishopAttacks(int square, long occupied) {
+        return ray(NORTH_EAST, square, occupied) | ray(NORTH_WEST, square, occupied)
+                | ray(SOUTH_WEST, square, occupied) | ray(SOUTH_EAST, square, occupied);
+    }
+
+    public static long rookAttacks(int square, long occupied) {
+        return ray(EAST, square, occupied) | ray(NORTH, square, occupied)
+                | ray(WEST, square, occupied) | ray(SOUTH, square, occupied);
+    }
+
+    public static long queenAttacks(int square, long occupied) {
+        return bishopAttacks(square, occupied) | rookAttacks(square, occupied);
+    }
+
+    // squares strictly between two squares on the same rank, file or diagonal, otherwise empty
+    public static long between(int start, int end) {
+        return BETWEEN[start][end];
+    }
+
+    // the whole rank, file or diagonal through both squares, otherwise empty
+    public static long line(int start, int end) {
+        return LINE[start][end];
+    }
+
+    // the ray stops at (and includes) the first occupied square
+    private static long ray(int direction, int square, long occupied) {
+        long attacks = RAYS[direction][square];
+        long blockers = attacks & occupied;
+
+        if (blockers != 0) {
+            int blocker = (direction < WEST ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers));
+            attacks ^= RAYS[direction][blocker];
+        }
+
+        return attacks;
+    }
+}
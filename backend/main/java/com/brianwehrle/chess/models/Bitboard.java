@@ -0,0 +1,75 @@
+package com.brianwehrle.chess.models;
+
+/*
+    Helpers for working with bitboards, a long where each bit is one square.
+    Squares are indexed the same way as the Chessboard array, row * 8 + col,
+    so bit 0 is a1, bit 7 is h1 and bit 63 is h8.
+ */
+public final class Bitboard {
+    public static final long EMPTY = 0L;
+
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+    public static final long RANK_1 = 0xFFL;
+    public static final long RANK_2 = RANK_1 << 8;
+    public static final long RANK_4 = RANK_1 << 24;
+    public static final long RANK_5 = RANK_1 << 32;
+    public static final long RANK_7 = RANK_1 << 48;
+    public static final long RANK_8 = RANK_1 << 56;
+
+    private Bitboard() {}
+
+    public static int square(int row, int col) {
+        return row * 8 + col;
+    }
+
+    public static int row(int square) {
+        return square >>> 3;
+    }
+
+    public static int col(int square) {
+        return square & 7;
+    }
+
+    public static boolean onBoard(int row, int col) {
+        return row >= 0 && row < 8 && col >= 0 && col < 8;
+    }
+
+    public static long bit(int square) {
+        return 1L << square;
+    }
+
+    public static boolean contains(long bitboard, int square) {
+        return (bitboard & (1L << square)) != 0;
+    }
+
+    // index of the lowest set bit, only meaningful for non-empty bitboards
+    public static int first(long bitboard) {
+        return Long.numberOfTrailingZeros(bitboard);
+    }
+
+    public static long removeFirst(long bitboard) {
+        return bitboard & (bitboard - 1);
+    }
+
+    public static int count(long bitboard) {
+        return Long.bitCount(bitboard);
+    }
+
+    public static String toNotation(int square) {
+        return (char)(col(square) + 'a') + String.valueOf(row(square) + 1);
+    }
+
+    public static String toString(long bitboard) {
+        StringBuilder res = new StringBuilder();
+
+        for (int row = 7; row >= 0; row--) {
+            for (int col = 0; col < 8; col++) {
+                res.append("|").append(contains(bitboard, square(row, col)) ? "X" : "_");
+            }
+            res.append("|\n");
+        }
+
+        return res.toString();
+    }
+}
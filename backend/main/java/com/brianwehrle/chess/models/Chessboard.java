@@ -1,54 +1,229 @@
 package com.brianwehrle.chess.models;
 
+import com.brianwehrle.chess.exceptions.InvalidFenException;
 import com.brianwehrle.chess.models.pieces.*;
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class Chessboard {
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
     private static final int NUM_ROWS = 8;
     private static final int NUM_COLS = 8;
 
+    // fen letter for each piece index of Position
+    private static final String PIECE_LETTERS = "PNBRQKpnbrqk";
+
+    // castling rights that survive a piece moving from or to each square
+    private static final int[] CASTLING_MASK = new int[64];
+
+    // the most the undo stack has room for
+    private static final int MAX_HALF_MOVE_CLOCK = 0xFFFF;
+
+    static {
+        Arrays.fill(CASTLING_MASK, Position.ALL_CASTLING);
+        CASTLING_MASK[0] &= ~Position.WHITE_LONG;
+        CASTLING_MASK[4] &= ~(Position.WHITE_LONG | Position.WHITE_SHORT);
+        CASTLING_MASK[7] &= ~Position.WHITE_SHORT;
+        CASTLING_MASK[56] &= ~Position.BLACK_LONG;
+        CASTLING_MASK[60] &= ~(Position.BLACK_LONG | Position.BLACK_SHORT);
+        CASTLING_MASK[63] &= ~Position.BLACK_SHORT;
+    }
+
+    // the bitboards are the real board, everything else is derived from them
+    private final Position position;
+
+    // Square/Piece view of the position, only built when asked for.
     // represents a 2d array
     // rows and cols grow down and right
     // 0, 0 is a1, 0, 7 is a8
     private Square[] board;
     private ArrayList<Piece> pieces;
 
+    // one entry per move made, packed as
+    // captured piece + 1 (4 bits), castling rights (4 bits), en passant square + 1 (7 bits), half move clock (16 bits)
+    private int[] undoStack;
+    // key of the position before each move, to find repetitions
+    private long[] keyStack;
+    private int undoSize;
+
     public Chessboard() {
+        position = new Position();
+        undoStack = new int[64];
+        keyStack = new long[64];
         initialSetup();
     }
 
+    public Chessboard(String fen) {
+        position = new Position();
+        undoStack = new int[64];
+        keyStack = new long[64];
+        loadPositionFromFen(fen);
+    }
+
+    // independent copy, moves made on it don't affect the original
+    public Chessboard(Chessboard other) {
+        position = new Position(other.position);
+        undoStack = other.undoStack.clone();
+        keyStack = other.keyStack.clone();
+        undoSize = other.undoSize;
+    }
+
     // load position from moveList
     public Chessboard(ArrayList<Move> moveList) {
-        initialSetup();
+        this();
 
         for (Move move : moveList) {
-            move(move);
+            makeMove(move);
+        }
+    }
+
+    public void makeMove(Move move) {
+        makeMove(move.encode());
+    }
+
+    public void unmakeMove(Move move) {
+        unmakeMove(move.encode());
+    }
+
+    // makes the encoded move in place, remembering what it needs to take it back with unmakeMove
+    public void makeMove(int move) {
+        int start = Move.startSquare(move);
+        int end = Move.endSquare(move);
+        Move.MoveType moveType = Move.moveTypeOf(move);
+        int piece = position.pieceAt(start);
+        int captured = position.pieceAt(end);
+
+        if (moveType == Move.MoveType.EN_PASSANT) {
+            captured = position.pieceAt(end - (Position.colorOf(piece) == Color.WHITE ? NUM_COLS : -NUM_COLS));
+        }
+
+        pushUndo(captured);
+
+        switch (moveType) {
+            case STANDARD, CAPTURE -> movePiece(start, end);
+            case CASTLE -> castle(start, end);
+            case EN_PASSANT -> enPassant(start, end);
+            case PROMOTION_KNIGHT, PROMOTION_BISHOP, PROMOTION_ROOK, PROMOTION_QUEEN -> promote(start, end, moveType);
         }
+
+        updateGameState(piece, start, end, captured != Position.EMPTY);
+        invalidateViews();
     }
 
-    public void move(Move move) {
-        switch (move.getMoveType()) {
-            case STANDARD -> movePiece(getSquareAt(move.getStartRow(), move.getStartCol()), getSquareAt(move.getEndRow(), move.getEndCol()));
-            case CASTLE -> castle(move);
-            case EN_PASSANT -> enPassant(move);
-            case PROMOTION_KNIGHT, PROMOTION_BISHOP, PROMOTION_ROOK, PROMOTION_QUEEN -> promote(move);
-            default -> {
-                System.out.println("Invalid move");
-                System.exit(1);
+    // takes back the last move made, which must be the move passed in
+    public void unmakeMove(int move) {
+        if (undoSize == 0) throw new IllegalStateException("No move to unmake.");
+
+        int undo = undoStack[--undoSize];
+        int captured = (undo & 0xF) - 1;
+        int start = Move.startSquare(move);
+        int end = Move.endSquare(move);
+        Color color = (position.getSideToMove() == Color.WHITE ? Color.BLACK : Color.WHITE);
+
+        switch (Move.moveTypeOf(move)) {
+            case STANDARD, CAPTURE -> {
+                position.movePiece(end, start);
+                if (captured != Position.EMPTY) position.addPiece(end, captured);
+            }
+            case CASTLE -> {
+                position.movePiece(end, start);
+
+                int row = Bitboard.row(end);
+                int startCol = (Bitboard.col(end) == 2 ? 0 : 7);
+                int endCol = (Bitboard.col(end) == 2 ? 3 : 5);
+                position.movePiece(Bitboard.square(row, endCol), Bitboard.square(row, startCol));
+            }
+            case EN_PASSANT -> {
+                position.movePiece(end, start);
+                position.addPiece(end - (color == Color.WHITE ? NUM_COLS : -NUM_COLS), captured);
             }
+            case PROMOTION_KNIGHT, PROMOTION_BISHOP, PROMOTION_ROOK, PROMOTION_QUEEN -> {
+                position.removePiece(end);
+                position.addPiece(start, color, PieceType.PAWN);
+                if (captured != Position.EMPTY) position.addPiece(end, captured);
+            }
+        }
+
+        position.setCastlingRights((undo >>> 4) & 0xF);
+        position.setEnPassantSquare(((undo >>> 8) & 0x7F) - 1);
+        position.setHalfMoveClock(undo >>> 15);
+        if (color == Color.BLACK) position.setMoveNumber(position.getMoveNumber() - 1);
+        position.setSideToMove(color);
+
+        invalidateViews();
+    }
+
+    public Position getPosition() {
+        return position;
+    }
+
+    public Color getSideToMove() {
+        return position.getSideToMove();
+    }
+
+    public void setSideToMove(Color color) {
+        position.setSideToMove(color);
+    }
+
+    public long getKey() {
+        return position.getKey();
+    }
+
+    // true if the position occurred before since the last capture or pawn move
+    public boolean isRepetition() {
+        int earliest = Math.max(0, undoSize - position.getHalfMoveClock());
+
+        // only positions with the same side to move can repeat
+        for (int i = undoSize - 2; i >= earliest; i -= 2) {
+            if (keyStack[i] == position.getKey()) return true;
         }
+
+        return false;
+    }
+
+    public boolean isSquareAttacked(int square, Color byColor) {
+        long occupied = position.getOccupancy();
+        long queens = position.getBitboard(byColor, PieceType.QUEEN);
+
+        // a pawn of byColor attacks square if a pawn of the other color on square would attack it
+        return (Attacks.pawnAttacks(byColor == Color.WHITE ? Color.BLACK : Color.WHITE, square) & position.getBitboard(byColor, PieceType.PAWN)) != 0
+                || (Attacks.knightAttacks(square) & position.getBitboard(byColor, PieceType.KNIGHT)) != 0
+                || (Attacks.kingAttacks(square) & position.getBitboard(byColor, PieceType.KING)) != 0
+                || (Attacks.bishopAttacks(square, occupied) & (position.getBitboard(byColor, PieceType.BISHOP) | queens)) != 0
+                || (Attacks.rookAttacks(square, occupied) & (position.getBitboard(byColor, PieceType.ROOK) | queens)) != 0;
+    }
+
+    // every piece of either color attacking square
+    public long attackersOf(int square) {
+        return attackersOf(square, position.getOccupancy());
+    }
+
+    // every piece of either color attacking square, with sliding pieces blocked by occupied
+    public long attackersOf(int square, long occupied) {
+        long queens = position.getBitboard(Color.WHITE, PieceType.QUEEN) | position.getBitboard(Color.BLACK, PieceType.QUEEN);
+        long bishops = position.getBitboard(Color.WHITE, PieceType.BISHOP) | position.getBitboard(Color.BLACK, PieceType.BISHOP);
+        long rooks = position.getBitboard(Color.WHITE, PieceType.ROOK) | position.getBitboard(Color.BLACK, PieceType.ROOK);
+
+        return (Attacks.pawnAttacks(Color.BLACK, square) & position.getBitboard(Color.WHITE, PieceType.PAWN))
+                | (Attacks.pawnAttacks(Color.WHITE, square) & position.getBitboard(Color.BLACK, PieceType.PAWN))
+                | (Attacks.knightAttacks(square) & (position.getBitboard(Color.WHITE, PieceType.KNIGHT) | position.getBitboard(Color.BLACK, PieceType.KNIGHT)))
+                | (Attacks.kingAttacks(square) & (position.getBitboard(Color.WHITE, PieceType.KING) | position.getBitboard(Color.BLACK, PieceType.KING)))
+                | (Attacks.bishopAttacks(square, occupied) & (bishops | queens))
+                | (Attacks.rookAttacks(square, occupied) & (rooks | queens));
+    }
+
+    public boolean inCheck(Color color) {
+        return isSquareAttacked(position.getKingSquare(color), color == Color.WHITE ? Color.BLACK : Color.WHITE);
     }
 
     public Square getKingLoc(Color color) {
-        Piece king = pieces.stream()
-                .filter(piece -> piece.getType() == Piece.PieceType.KING)
-                .filter(piece -> piece.getColor() == color)
-                .findFirst()
-                .orElse(null);
-
-        if (king != null) {
-            return king.square();
+        int kingSquare = position.getKingSquare(color);
+
+        if (kingSquare != Position.NO_SQUARE) {
+            return getBoard()[kingSquare];
         } else {
             System.err.println("Error, couldn't find King!!");
             return null;
@@ -56,23 +231,24 @@ public class Chessboard {
     }
 
     public void setPiece(Square square, Piece piece) {
+        int index = Bitboard.square(square.getRow(), square.getCol());
+
+        position.removePiece(index);
         if (piece != null) {
-            piece.setSquare(square);
-            square.setPiece(piece);
-        } else {
-            square.setPiece(null);
+            position.addPiece(index, piece.getColor(), piece.getType());
         }
+
+        invalidateViews();
     }
 
     public void addNewPiece(Square square, Piece piece) {
         setPiece(square, piece);
-        pieces.add(piece);
     }
 
     public Square getSquareAt(int row, int col) {
         if (row > 7 || col > 7 || row < 0 || col < 0) return null;
 
-        return board[row * NUM_COLS + col];
+        return getBoard()[row * NUM_COLS + col];
     }
 
     public Piece pieceAt(int row, int col) {
@@ -83,6 +259,7 @@ public class Chessboard {
 
         StringBuilder line = new StringBuilder();
         StringBuilder res = new StringBuilder();
+        Square[] board = getBoard();
 
         for (int i = board.length - 1; i >= 0; i--) {
             line.insert(0, "|" + board[i].toString());
@@ -101,6 +278,7 @@ public class Chessboard {
 
         StringBuilder line = new StringBuilder();
         StringBuilder res = new StringBuilder();
+        Square[] board = getBoard();
         String output;
 
         for (int i = board.length - 1; i >= 0; i--) {
@@ -122,13 +300,15 @@ public class Chessboard {
     }
 
     public ArrayList<Piece> getPieces() {
+        if (pieces == null) buildViews();
+
         return pieces;
     }
 
     public ArrayList<Piece> getPieces(Color color) {
         ArrayList<Piece> colorPieces = new ArrayList<>();
 
-        for (Piece piece : pieces) {
+        for (Piece piece : getPieces()) {
             if (piece.getColor() == color) colorPieces.add(piece);
         }
 
@@ -136,6 +316,8 @@ public class Chessboard {
     }
 
     public Square[] getBoard() {
+        if (board == null) buildViews();
+
         return board;
     }
 
@@ -144,172 +326,341 @@ public class Chessboard {
     // Game information is required for the full FEN.
     public String convertPositionToFen() {
         StringBuilder fen = new StringBuilder();
-        int emptySquares = 0;
-        String letter = "";
 
-        for (int i = board.length - 8; i >= 0; i++) {
-            if (board[i].isEmpty()) {
-                emptySquares++;
-            } else {
-                if (emptySquares > 0) {
-                    fen.append(emptySquares);
-                    emptySquares = 0;
-                }
-                switch (board[i].getPiece().getType()) {
-                    case BISHOP -> letter = "B";
-                    case QUEEN -> letter = "Q";
-                    case ROOK -> letter = "R";
-                    case PAWN -> letter = "P";
-                    case KING -> letter = "K";
-                    case KNIGHT -> letter = "N";
-                }
-                if (board[i].getPiece().getColor() == Color.BLACK)
-                    letter = letter.toLowerCase();
+        for (int row = NUM_ROWS - 1; row >= 0; row--) {
+            int emptySquares = 0;
 
-                fen.append(letter);
-            }
-            if ((i + 1) % 8 == 0) {
-                if (emptySquares > 0)
-                    fen.append(emptySquares);
-                fen.append("/");
-                emptySquares = 0;
-                i -= 16;
+            for (int col = 0; col < NUM_COLS; col++) {
+                int piece = position.pieceAt(Bitboard.square(row, col));
+
+                if (piece == Position.EMPTY) {
+                    emptySquares++;
+                } else {
+                    if (emptySquares > 0) {
+                        fen.append(emptySquares);
+                        emptySquares = 0;
+                    }
+                    fen.append(PIECE_LETTERS.charAt(piece));
+                }
             }
+
+            if (emptySquares > 0)
+                fen.append(emptySquares);
+            fen.append("/");
         }
 
         return fen.toString();
     }
 
+    // placement only, or all six fields. Throws InvalidFenException if the fen is malformed,
+    // in which case the board is left empty
     public void loadPositionFromFen(String fen) {
-        initializeSquares(); // start new board
+        position.clear(); // start new board
+        undoSize = 0;
+        invalidateViews();
+
+        try {
+            parseFen(fen);
+        } catch (InvalidFenException e) {
+            position.clear();
+            throw e;
+        }
+    }
+
+    // one pass over the characters, without splitting the string or boxing anything
+    private void parseFen(String fen) {
+        int length = fen.length();
+        int i = skipSpaces(fen, 0);
 
+        // placement, from a8 to h1
         int row = 7;
         int col = 0;
-        for (int i = 0; i < fen.length(); i++) {
-            Character letter = fen.charAt(i);
+        for (; i < length && fen.charAt(i) != ' '; i++) {
+            char letter = fen.charAt(i);
 
-            if (letter.equals('/')) {
+            if (letter == '/') {
+                if (col != NUM_COLS) throw new InvalidFenException(fen, "rank " + (row + 1) + " doesn't have 8 squares");
                 row--;
                 col = 0;
-            } else if (letter >= 48 && letter <= 57) {
-                int num = letter - 48;
-                while (num > 0) {
-                    setPiece(getSquareAt(row, col), null);
-                    col++;
-                    num--;
-                }
+            } else if (letter >= '1' && letter <= '8') {
+                col += letter - '0';
+                if (col > NUM_COLS) throw new InvalidFenException(fen, "rank " + (row + 1) + " has more than 8 squares");
             } else {
-                switch(letter) {
-                    case 'r' -> addNewPiece(getSquareAt(row, col), new Rook(Color.BLACK));
-                    case 'n' -> addNewPiece(getSquareAt(row, col), new Knight(Color.BLACK));
-                    case 'b' -> addNewPiece(getSquareAt(row, col), new Bishop(Color.BLACK));
-                    case 'q' -> addNewPiece(getSquareAt(row, col), new Queen(Color.BLACK));
-                    case 'k' -> addNewPiece(getSquareAt(row, col), new King(Color.BLACK));
-                    case 'p' -> addNewPiece(getSquareAt(row, col), new Pawn(Color.BLACK));
-
-                    case 'R' -> addNewPiece(getSquareAt(row, col), new Rook(Color.WHITE));
-                    case 'N' -> addNewPiece(getSquareAt(row, col), new Knight(Color.WHITE));
-                    case 'B' -> addNewPiece(getSquareAt(row, col), new Bishop(Color.WHITE));
-                    case 'Q' -> addNewPiece(getSquareAt(row, col), new Queen(Color.WHITE));
-                    case 'K' -> addNewPiece(getSquareAt(row, col), new King(Color.WHITE));
-                    case 'P' -> addNewPiece(getSquareAt(row, col), new Pawn(Color.WHITE));
-
-                    default -> {
-                        System.out.println("Unrecognized piece");
-                        System.exit(1);
-                    }
-                }
+                int piece = PIECE_LETTERS.indexOf(letter);
+                if (piece < 0) throw new InvalidFenException(fen, "unrecognized piece '" + letter + "'");
+                if (row < 0 || col >= NUM_COLS) throw new InvalidFenException(fen, "too many squares");
+                if (Position.typeOf(piece) == PieceType.PAWN && (row == 0 || row == 7)) throw new InvalidFenException(fen, "pawn on the first or last rank");
+
+                position.addPiece(Bitboard.square(row, col), piece);
                 col++;
             }
         }
+
+        // the placement-only fens of convertPositionToFen end with a '/'
+        if (!(row == 0 && col == NUM_COLS) && !(row == -1 && col == 0)) throw new InvalidFenException(fen, "placement doesn't have 8 ranks of 8 squares");
+        if (Bitboard.count(position.getBitboard(Color.WHITE, PieceType.KING)) != 1
+                || Bitboard.count(position.getBitboard(Color.BLACK, PieceType.KING)) != 1) {
+            throw new InvalidFenException(fen, "each side needs exactly one king");
+        }
+
+        i = skipSpaces(fen, i);
+        if (i == length) {
+            // only the placement is known, so assume anything still on its home square can castle
+            position.setCastlingRights(castlingRightsFromPlacement());
+            return;
+        }
+
+        // side to move
+        char side = fen.charAt(i++);
+        if (side != 'w' && side != 'b') throw new InvalidFenException(fen, "side to move must be w or b");
+        Color us = (side == 'w' ? Color.WHITE : Color.BLACK);
+        Color them = (us == Color.WHITE ? Color.BLACK : Color.WHITE);
+        position.setSideToMove(us);
+        if (inCheck(them)) throw new InvalidFenException(fen, "the side not to move is in check");
+        i = nextField(fen, i);
+
+        // castling, rights without the king and rook on their squares are dropped
+        int rights = 0;
+        if (i < length && fen.charAt(i) == '-') {
+            i++;
+        } else {
+            for (; i < length && fen.charAt(i) != ' '; i++) {
+                rights |= switch (fen.charAt(i)) {
+                    case 'K' -> Position.WHITE_SHORT;
+                    case 'Q' -> Position.WHITE_LONG;
+                    case 'k' -> Position.BLACK_SHORT;
+                    case 'q' -> Position.BLACK_LONG;
+                    default -> throw new InvalidFenException(fen, "unrecognized castling right '" + fen.charAt(i) + "'");
+                };
+            }
+        }
+        position.setCastlingRights(rights & castlingRightsFromPlacement());
+        i = nextField(fen, i);
+
+        // en passant, the square a pawn just passed over. only kept if a pawn can take, the same as after a move
+        if (i < length && fen.charAt(i) == '-') {
+            i++;
+        } else if (i + 1 < length) {
+            int file = fen.charAt(i) - 'a';
+            int rank = fen.charAt(i + 1) - '1';
+            if (file < 0 || file >= NUM_COLS || rank != (us == Color.WHITE ? 5 : 2)) throw new InvalidFenException(fen, "bad en passant square");
+
+            int square = Bitboard.square(rank, file);
+            int pushed = square + (us == Color.WHITE ? -NUM_COLS : NUM_COLS);
+            if (!position.isEmpty(square) || position.pieceAt(pushed) != Position.pieceIndex(them, PieceType.PAWN)) {
+                throw new InvalidFenException(fen, "no pawn just moved past the en passant square");
+            }
+            if ((Attacks.pawnAttacks(them, square) & position.getBitboard(us, PieceType.PAWN)) != 0) {
+                position.setEnPassantSquare(square);
+            }
+            i += 2;
+        }
+        i = nextField(fen, i);
+
+        // clocks, optional
+        if (i < length) {
+            int halfMoveClock = 0;
+            for (; i < length && fen.charAt(i) != ' '; i++) {
+                halfMoveClock = addDigit(fen, halfMoveClock, fen.charAt(i));
+            }
+            if (halfMoveClock > MAX_HALF_MOVE_CLOCK) throw new InvalidFenException(fen, "half move clock is too large");
+            position.setHalfMoveClock(halfMoveClock);
+            i = nextField(fen, i);
+        }
+        if (i < length) {
+            int moveNumber = 0;
+            for (; i < length && fen.charAt(i) != ' '; i++) {
+                moveNumber = addDigit(fen, moveNumber, fen.charAt(i));
+            }
+            position.setMoveNumber(Math.max(1, moveNumber));
+            i = skipSpaces(fen, i);
+        }
+
+        if (i != length) throw new InvalidFenException(fen, "unexpected text after the move number");
+    }
+
+    private static int skipSpaces(String fen, int i) {
+        while (i < fen.length() && fen.charAt(i) == ' ') i++;
+        return i;
     }
 
-    private void initializeSquares() {
+    // i must be at the end of a field, returns the start of the next one
+    private static int nextField(String fen, int i) {
+        if (i < fen.length() && fen.charAt(i) != ' ') throw new InvalidFenException(fen, "unexpected '" + fen.charAt(i) + "'");
+        return skipSpaces(fen, i);
+    }
+
+    private static int addDigit(String fen, int number, char digit) {
+        if (digit < '0' || digit > '9' || number > 99_999) throw new InvalidFenException(fen, "bad move clock");
+        return number * 10 + (digit - '0');
+    }
+
+    private int castlingRightsFromPlacement() {
+        int rights = 0;
+        int whiteRook = Position.pieceIndex(Color.WHITE, PieceType.ROOK);
+        int blackRook = Position.pieceIndex(Color.BLACK, PieceType.ROOK);
+
+        if (position.pieceAt(4) == Position.pieceIndex(Color.WHITE, PieceType.KING)) {
+            if (position.pieceAt(7) == whiteRook) rights |= Position.WHITE_SHORT;
+            if (position.pieceAt(0) == whiteRook) rights |= Position.WHITE_LONG;
+        }
+        if (position.pieceAt(60) == Position.pieceIndex(Color.BLACK, PieceType.KING)) {
+            if (position.pieceAt(63) == blackRook) rights |= Position.BLACK_SHORT;
+            if (position.pieceAt(56) == blackRook) rights |= Position.BLACK_LONG;
+        }
+
+        return rights;
+    }
+
+    // castling rights, en passant square, clocks and side to move after a move
+    private void updateGameState(int piece, int start, int end, boolean capture) {
+        Color color = Position.colorOf(piece);
+        boolean pawnMove = Position.typeOf(piece) == PieceType.PAWN;
+
+        position.setCastlingRights(position.getCastlingRights() & CASTLING_MASK[start] & CASTLING_MASK[end]);
+
+        // only recorded when an enemy pawn could actually take en passant,
+        // otherwise the same position would get a different key depending on how it was reached
+        int enPassantSquare = Position.NO_SQUARE;
+        if (pawnMove && Math.abs(end - start) == 2 * NUM_COLS) {
+            int passedSquare = (start + end) / 2;
+            Color other = (color == Color.WHITE ? Color.BLACK : Color.WHITE);
+
+            if ((Attacks.pawnAttacks(color, passedSquare) & position.getBitboard(other, PieceType.PAWN)) != 0) {
+                enPassantSquare = passedSquare;
+            }
+        }
+        position.setEnPassantSquare(enPassantSquare);
+
+        // track half move number for 50 move rule
+        if (pawnMove || capture)
+            position.setHalfMoveClock(0);
+        else
+            position.setHalfMoveClock(position.getHalfMoveClock() + 1);
+
+        if (color == Color.BLACK) position.setMoveNumber(position.getMoveNumber() + 1);
+
+        position.setSideToMove(color == Color.WHITE ? Color.BLACK : Color.WHITE);
+    }
+
+    private void pushUndo(int captured) {
+        if (undoSize == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoSize * 2);
+            keyStack = Arrays.copyOf(keyStack, undoSize * 2);
+        }
+
+        keyStack[undoSize] = position.getKey();
+        undoStack[undoSize++] = (captured + 1)
+                | position.getCastlingRights() << 4
+                | (position.getEnPassantSquare() + 1) << 8
+                | position.getHalfMoveClock() << 15;
+    }
+
+    private void invalidateViews() {
+        board = null;
+        pieces = null;
+    }
+
+    private void buildViews() {
         board = new Square[NUM_COLS * NUM_ROWS];
         pieces = new ArrayList<>();
 
         for (int row = 0; row < NUM_ROWS; row++) {
             for (int col = 0; col < NUM_COLS; col++) {
-                board[row * NUM_COLS + col] = new Square(row, col);
+                int index = row * NUM_COLS + col;
+                Square square = new Square(row, col);
+                board[index] = square;
+
+                int piece = position.pieceAt(index);
+                if (piece != Position.EMPTY) {
+                    Piece newPiece = newPiece(Position.colorOf(piece), Position.typeOf(piece));
+                    newPiece.setSquare(square);
+                    square.setPiece(newPiece);
+                    pieces.add(newPiece);
+                }
             }
         }
     }
 
-    private void movePiece(Square start, Square end) {
-        if (!end.isEmpty())
-            pieces.remove(end.getPiece());
+    private static Piece newPiece(Color color, PieceType type) {
+        return switch (type) {
+            case PAWN -> new Pawn(color);
+            case KNIGHT -> new Knight(color);
+            case BISHOP -> new Bishop(color);
+            case ROOK -> new Rook(color);
+            case QUEEN -> new Queen(color);
+            case KING -> new King(color);
+        };
+    }
 
-        setPiece(end, start.getPiece());
-        setPiece(start, null);
+    private void movePiece(int start, int end) {
+        position.removePiece(end);
+        position.movePiece(start, end);
     }
 
-    private void promote(Move move) {
-        Square start = getSquareAt(move.getStartRow(), move.getStartCol());
-        Square end = getSquareAt(move.getEndRow(), move.getEndCol());
-        Color color = start.getPiece().getColor();
+    private void promote(int start, int end, Move.MoveType moveType) {
+        Color color = Position.colorOf(position.pieceAt(start));
 
-        movePiece(start, end);
-        pieces.remove(end.getPiece());
-
-        Piece newPiece;
-        switch (move.getMoveType()) {
-            case PROMOTION_BISHOP -> newPiece = new Bishop(color);
-            case PROMOTION_ROOK -> newPiece = new Rook(color);
-            case PROMOTION_KNIGHT -> newPiece = new Knight(color);
-            case PROMOTION_QUEEN -> newPiece = new Queen(color);
+        position.removePiece(start);
+        position.removePiece(end);
+
+        PieceType newPiece;
+        switch (moveType) {
+            case PROMOTION_BISHOP -> newPiece = PieceType.BISHOP;
+            case PROMOTION_ROOK -> newPiece = PieceType.ROOK;
+            case PROMOTION_KNIGHT -> newPiece = PieceType.KNIGHT;
+            case PROMOTION_QUEEN -> newPiece = PieceType.QUEEN;
             default -> throw new RuntimeException("No promotion type specified."); //TODO make some exceptions
         }
 
-        addNewPiece(end, newPiece);
+        position.addPiece(end, color, newPiece);
     }
 
-    private void enPassant(Move move) {
-        Square start = getSquareAt(move.getStartRow(), move.getStartCol());
-        Square end = getSquareAt(move.getEndRow(), move.getEndCol());
-        Color color = start.getPiece().getColor();
+    private void enPassant(int start, int end) {
+        Color color = Position.colorOf(position.pieceAt(start));
 
         movePiece(start, end);
 
-        Square capturedPawnSquare = getSquareAt(end.getRow() - (color == Color.WHITE ? 1 : -1), end.getCol());
-        pieces.remove(capturedPawnSquare.getPiece());
-        setPiece(capturedPawnSquare, null);
+        int capturedPawnSquare = end - (color == Color.WHITE ? NUM_COLS : -NUM_COLS);
+        position.removePiece(capturedPawnSquare);
     }
 
-    private void castle(Move move) {
-        Square start = getSquareAt(move.getStartRow(), move.getStartCol());
-        Square end = getSquareAt(move.getEndRow(), move.getEndCol());
-
+    private void castle(int start, int end) {
         // move the king
         movePiece(start, end);
 
         // move rook
-        int row = (end.getPiece().getColor() == Color.WHITE ? 0 : 7);
-        int startCol = (end.getCol() == 2 ? 0 : 7);
-        int endCol = (end.getCol() == 2 ? 3 : 5);
+        int row = Bitboard.row(end);
+        int startCol = (Bitboard.col(end) == 2 ? 0 : 7);
+        int endCol = (Bitboard.col(end) == 2 ? 3 : 5);
 
-        movePiece(getSquareAt(row, startCol), getSquareAt(row, endCol));
+        movePiece(Bitboard.square(row, startCol), Bitboard.square(row, endCol));
     }
 
     private void initialSetup() {
-        initializeSquares();
+        position.clear();
+        undoSize = 0;
 
         for (int i = 0; i < 8; i++) {
-            addNewPiece(getSquareAt(1, i), new Pawn(Color.WHITE));
-            addNewPiece(getSquareAt(6, i), new Pawn(Color.BLACK));
+            position.addPiece(Bitboard.square(1, i), Color.WHITE, PieceType.PAWN);
+            position.addPiece(Bitboard.square(6, i), Color.BLACK, PieceType.PAWN);
         }
 
         setUpKingRow(0, Color.WHITE);
         setUpKingRow(7, Color.BLACK);
+
+        position.setCastlingRights(Position.ALL_CASTLING);
+        invalidateViews();
     }
 
     private void setUpKingRow(int row, Color color) {
-        addNewPiece(getSquareAt(row, 0), new Rook(color));
-        addNewPiece(getSquareAt(row, 1), new Knight(color));
-        addNewPiece(getSquareAt(row, 2), new Bishop(color));
-        addNewPiece(getSquareAt(row, 3), new Queen(color));
-        addNewPiece(getSquareAt(row, 4), new King(color));
-        addNewPiece(getSquareAt(row, 5), new Bishop(color));
-        addNewPiece(getSquareAt(row, 6), new Knight(color));
-        addNewPiece(getSquareAt(row, 7), new Rook(color));
+        position.addPiece(Bitboard.square(row, 0), color, PieceType.ROOK);
+        position.addPiece(Bitboard.square(row, 1), color, PieceType.KNIGHT);
+        position.addPiece(Bitboard.square(row, 2), color, PieceType.BISHOP);
+        position.addPiece(Bitboard.square(row, 3), color, PieceType.QUEEN);
+        position.addPiece(Bitboard.square(row, 4), color, PieceType.KING);
+        position.addPiece(Bitboard.square(row, 5), color, PieceType.BISHOP);
+        position.addPiece(Bitboard.square(row, 6), color, PieceType.KNIGHT);
+        position.addPiece(Bitboard.square(row, 7), color, PieceType.ROOK);
     }
 }
@@ -18,6 +18,17 @@ public class Move {
         PROMOTION_QUEEN
     }
 
+    /*
+        Moves are passed around the engine packed into an int:
+        bits 0-5 start square, 6-11 end square, 12-14 move type, 15-17 piece type.
+        Move objects are only created at the API boundary.
+     */
+    // a1 to a1 is never a legal move, so the all zero encoding can stand for "no move"
+    public static final int NONE = 0;
+
+    private static final MoveType[] MOVE_TYPES = MoveType.values();
+    private static final Piece.PieceType[] PIECE_TYPES = Piece.PieceType.values();
+
     private int startRow, startCol, endRow, endCol;
     private MoveType moveType;
     private Piece.PieceType pieceType;
@@ -36,6 +47,45 @@ public class Move {
         this.pieceType = pieceType;
     }
 
+    // start and end are square indices, row * 8 + col
+    public Move (Piece.PieceType pieceType, MoveType moveType, int start, int end) {
+        startRow = Bitboard.row(start);
+        startCol = Bitboard.col(start);
+        endRow = Bitboard.row(end);
+        endCol = Bitboard.col(end);
+
+        this.moveType = moveType;
+        this.pieceType = pieceType;
+    }
+
+    public static int encode(Piece.PieceType pieceType, MoveType moveType, int start, int end) {
+        return start | end << 6 | moveType.ordinal() << 12 | pieceType.ordinal() << 15;
+    }
+
+    public static int startSquare(int move) {
+        return move & 0x3F;
+    }
+
+    public static int endSquare(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static MoveType moveTypeOf(int move) {
+        return MOVE_TYPES[(move >>> 12) & 0x7];
+    }
+
+    public static Piece.PieceType pieceTypeOf(int move) {
+        return PIECE_TYPES[(move >>> 15) & 0x7];
+    }
+
+    public static Move fromEncoded(int move) {
+        return new Move(pieceTypeOf(move), moveTypeOf(move), startSquare(move), endSquare(move));
+    }
+
+    public int encode() {
+        return encode(pieceType, moveType, Bitboard.square(startRow, startCol), Bitboard.square(endRow, endCol));
+    }
+
     // to get fancy chess icon string
     public String toString(int code) {
         return Converter.moveToAlgebraic(this, code);
@@ -0,0 +1,232 @@
+package com.brianwehrle.chess.models;
+
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+
+import java.util.ArrayList;
+
+/*
+    Generates strictly legal moves. Checkers and pinned pieces are worked out once
+    per position, then every piece is limited to the squares that keep its king safe:
+    - in double check only the king can move
+    - in single check other pieces must capture the checker or block the check
+    - pinned pieces can only move along the line between their king and the pinner
+    - the king can't step onto (or along the line of) an attacked square
+
+    Captures come out as CAPTURE moves, except capturing promotions which are
+    PROMOTION_* like any other promotion.
+ */
+public final class MoveGenerator {
+
+    private MoveGenerator() {}
+
+    // Move objects for the API, the engine should reuse a MoveList instead
+    public static ArrayList<Move> generateLegalMoves(Chessboard board) {
+        MoveList moves = new MoveList();
+        generateLegalMoves(board, moves);
+        return moves.toMoves();
+    }
+
+    // fills moves with the encoded legal moves of the position, clearing it first
+    public static void generateLegalMoves(Chessboard board, MoveList moves) {
+        generate(board, moves, false);
+    }
+
+    // like generateLegalMoves, but only captures and queen promotions, for the quiescence search
+    public static void generateCaptures(Chessboard board, MoveList moves) {
+        generate(board, moves, true);
+    }
+
+    private static void generate(Chessboard board, MoveList moves, boolean capturesOnly) {
+        moves.clear();
+        Position position = board.getPosition();
+        Color us = position.getSideToMove();
+        Color them = (us == Color.WHITE ? Color.BLACK : Color.WHITE);
+        int king = position.getKingSquare(us);
+        long own = position.getOccupancy(us);
+        long enemy = position.getOccupancy(them);
+        long occupied = own | enemy;
+
+        long checkers = board.attackersOf(king) & enemy;
+        addKingMoves(position, us, them, king, own, checkers, capturesOnly, moves);
+
+        // double check, only the king can move
+        if (Bitboard.count(checkers) > 1) return;
+
+        // squares a piece other than the king may move to
+        long checkMask = ~Bitboard.EMPTY;
+        if (checkers != 0) {
+            int checker = Bitboard.first(checkers);
+            checkMask = checkers | Attacks.between(king, checker);
+        }
+
+        long pinned = pinnedPieces(position, them, king, own, occupied);
+
+        for (long pieces = own & ~position.getBitboard(us, PieceType.KING); pieces != 0; pieces = Bitboard.removeFirst(pieces)) {
+            int start = Bitboard.first(pieces);
+            PieceType type = Position.typeOf(position.pieceAt(start));
+            long allowed = checkMask;
+
+            if (Bitboard.contains(pinned, start)) {
+                allowed &= Attacks.line(king, start);
+            }
+
+            long targets = switch (type) {
+                case KNIGHT -> Attacks.knightAttacks(start);
+                case BISHOP -> Attacks.bishopAttacks(start, occupied);
+                case ROOK -> Attacks.rookAttacks(start, occupied);
+                case QUEEN -> Attacks.queenAttacks(start, occupied);
+                default -> Bitboard.EMPTY;
+            };
+
+            if (type == PieceType.PAWN) {
+                addPawnMoves(position, us, them, king, start, allowed, capturesOnly, moves);
+            } else {
+                addMoves(type, start, targets & ~own & allowed, enemy, capturesOnly, moves);
+            }
+        }
+    }
+
+    // own pieces that are the only thing standing between their king and an enemy slider
+    private static long pinnedPieces(Position position, Color them, int king, long own, long occupied) {
+        long pinned = Bitboard.EMPTY;
+        long enemy = position.getOccupancy(them);
+        long queens = position.getBitboard(them, PieceType.QUEEN);
+        long snipers = (Attacks.rookAttacks(king, enemy) & (position.getBitboard(them, PieceType.ROOK) | queens))
+                | (Attacks.bishopAttacks(king, enemy) & (position.getBitboard(them, PieceType.BISHOP) | queens));
+
+        for (; snipers != 0; snipers = Bitboard.removeFirst(snipers)) {
+            long blockers = Attacks.between(king, Bitboard.first(snipers)) & occupied;
+
+            if (Bitboard.count(blockers) == 1 && (blockers & own) != 0) {
+                pinned |= blockers;
+            }
+        }
+
+        return pinned;
+    }
+
+    private static void addKingMoves(Position position, Color us, Color them, int king, long own, long checkers, boolean capturesOnly, MoveList moves) {
+        // the king doesn't block attacks along the line it is moving away on
+        long occupied = position.getOccupancy() & ~Bitboard.bit(king);
+        long enemy = position.getOccupancy(them);
+        long targets = Attacks.kingAttacks(king) & (capturesOnly ? enemy : ~own);
+
+        for (; targets != 0; targets = Bitboard.removeFirst(targets)) {
+            int end = Bitboard.first(targets);
+
+            if (!isAttacked(position, end, them, occupied)) {
+                Move.MoveType moveType = (Bitboard.contains(enemy, end) ? Move.MoveType.CAPTURE : Move.MoveType.STANDARD);
+                moves.add(Move.encode(PieceType.KING, moveType, king, end));
+            }
+        }
+
+        //castling
+        if (checkers != 0 || capturesOnly) return;
+
+        int row = (us == Color.WHITE ? 0 : 7);
+        if (position.canCastle(us == Color.WHITE ? Position.WHITE_SHORT : Position.BLACK_SHORT)
+                && castlingUnobstructed(position, them, row, 5, 6, 6)) {
+            moves.add(Move.encode(PieceType.KING, Move.MoveType.CASTLE, king, Bitboard.square(row, 6)));
+        }
+        if (position.canCastle(us == Color.WHITE ? Position.WHITE_LONG : Position.BLACK_LONG)
+                && castlingUnobstructed(position, them, row, 1, 3, 2)) {
+            moves.add(Move.encode(PieceType.KING, Move.MoveType.CASTLE, king, Bitboard.square(row, 2)));
+        }
+    }
+
+    // squares firstCol to lastCol must be empty, and the king can't pass through or land on an attacked square
+    private static boolean castlingUnobstructed(Position position, Color them, int row, int firstCol, int lastCol, int kingEndCol) {
+        for (int col = firstCol; col <= lastCol; col++) {
+            if (!position.isEmpty(Bitboard.square(row, col))) return false;
+        }
+
+        int passCol = (kingEndCol == 6 ? 5 : 3);
+        long occupied = position.getOccupancy();
+
+        return !isAttacked(position, Bitboard.square(row, passCol), them, occupied)
+                && !isAttacked(position, Bitboard.square(row, kingEndCol), them, occupied);
+    }
+
+    private static void addPawnMoves(Position position, Color us, Color them, int king, int start, long allowed, boolean capturesOnly, MoveList moves) {
+        int forward = (us == Color.WHITE ? 8 : -8);
+        int homeRow = (us == Color.WHITE ? 1 : 6);
+        int promotionRow = (us == Color.WHITE ? 7 : 0);
+
+        // moving, only promotions count when generating captures
+        int next = start + forward;
+        if (position.isEmpty(next) && (!capturesOnly || Bitboard.row(next) == promotionRow)) {
+            if (Bitboard.contains(allowed, next)) {
+                addPawnMove(start, next, Move.MoveType.STANDARD, capturesOnly, moves);
+            }
+
+            int doublePush = next + forward;
+            if (Bitboard.row(start) == homeRow && position.isEmpty(doublePush) && Bitboard.contains(allowed, doublePush)) {
+                moves.add(Move.encode(PieceType.PAWN, Move.MoveType.STANDARD, start, doublePush));
+            }
+        }
+
+        //attacking
+        for (long targets = Attacks.pawnAttacks(us, start) & position.getOccupancy(them) & allowed; targets != 0; targets = Bitboard.removeFirst(targets)) {
+            addPawnMove(start, Bitboard.first(targets), Move.MoveType.CAPTURE, capturesOnly, moves);
+        }
+
+        // en passant
+        int enPassantSquare = position.getEnPassantSquare();
+        if (enPassantSquare != Position.NO_SQUARE && Bitboard.contains(Attacks.pawnAttacks(us, start), enPassantSquare)) {
+            int capturedPawn = enPassantSquare - forward;
+
+            // both pawns leave their rank at once, so the simplest safe test is to play it out on the bitboards
+            long occupied = (position.getOccupancy() ^ Bitboard.bit(start) ^ Bitboard.bit(capturedPawn)) | Bitboard.bit(enPassantSquare);
+            long enemy = position.getOccupancy(them) & ~Bitboard.bit(capturedPawn);
+
+            if (!isAttacked(position, king, them, occupied, enemy)) {
+                moves.add(Move.encode(PieceType.PAWN, Move.MoveType.EN_PASSANT, start, enPassantSquare));
+            }
+        }
+    }
+
+    // moveType is what the move is if it doesn't promote
+    private static void addPawnMove(int start, int end, Move.MoveType moveType, boolean queenOnly, MoveList moves) {
+        if (Bitboard.row(end) == 0 || Bitboard.row(end) == 7) {
+            if (!queenOnly) {
+                moves.add(Move.encode(PieceType.PAWN, Move.MoveType.PROMOTION_KNIGHT, start, end));
+                moves.add(Move.encode(PieceType.PAWN, Move.MoveType.PROMOTION_BISHOP, start, end));
+                moves.add(Move.encode(PieceType.PAWN, Move.MoveType.PROMOTION_ROOK, start, end));
+            }
+            moves.add(Move.encode(PieceType.PAWN, Move.MoveType.PROMOTION_QUEEN, start, end));
+        } else {
+            moves.add(Move.encode(PieceType.PAWN, moveType, start, end));
+        }
+    }
+
+    // targets must not include own pieces
+    private static void addMoves(PieceType type, int start, long targets, long enemy, boolean capturesOnly, MoveList moves) {
+        for (long captures = targets & enemy; captures != 0; captures = Bitboard.removeFirst(captures)) {
+            moves.add(Move.encode(type, Move.MoveType.CAPTURE, start, Bitboard.first(captures)));
+        }
+
+        if (capturesOnly) return;
+
+        for (long quiet = targets & ~enemy; quiet != 0; quiet = Bitboard.removeFirst(quiet)) {
+            moves.add(Move.encode(type, Move.MoveType.STANDARD, start, Bitboard.first(quiet)));
+        }
+    }
+
+    private static boolean isAttacked(Position position, int square, Color them, long occupied) {
+        return isAttacked(position, square, them, occupied, position.getOccupancy(them));
+    }
+
+    // like Chessboard.isSquareAttacked, but with the occupancy and the attacking pieces passed in
+    private static boolean isAttacked(Position position, int square, Color them, long occupied, long attackers) {
+        Color us = (them == Color.WHITE ? Color.BLACK : Color.WHITE);
+        long queens = position.getBitboard(them, PieceType.QUEEN);
+
+        long attacks = (Attacks.pawnAttacks(us, square) & position.getBitboard(them, PieceType.PAWN))
+                | (Attacks.knightAttacks(square) & position.getBitboard(them, PieceType.KNIGHT))
+                | (Attacks.kingAttacks(square) & position.getBitboard(them, PieceType.KING))
+                | (Attacks.bishopAttacks(square, occupied) & (position.getBitboard(them, PieceType.BISHOP) | queens))
+                | (Attacks.rookAttacks(square, occupied) & (position.getBitboard(them, PieceType.ROOK) | queens));
+
+        return (attacks & attackers) != 0;
+    }
+}
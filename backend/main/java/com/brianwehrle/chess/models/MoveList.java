@@ -0,0 +1,79 @@
+package com.brianwehrle.chess.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+    A reusable buffer of encoded moves (see Move.encode). Clearing it keeps the
+    array, so the same list can be filled again at every visit of a ply.
+ */
+public class MoveList {
+    // no position has more than 218 legal moves
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private int[] moves;
+    private int size;
+
+    public MoveList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MoveList(int capacity) {
+        moves = new int[capacity];
+    }
+
+    public void add(int move) {
+        if (size == moves.length) moves = Arrays.copyOf(moves, size * 2);
+
+        moves[size++] = move;
+    }
+
+    public int get(int index) {
+        return moves[index];
+    }
+
+    public void set(int index, int move) {
+        moves[index] = move;
+    }
+
+    public void swap(int first, int second) {
+        int temp = moves[first];
+        moves[first] = moves[second];
+        moves[second] = temp;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean contains(int move) {
+        for (int i = 0; i < size; i++) {
+            if (moves[i] == move) return true;
+        }
+
+        return false;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(moves, size);
+    }
+
+    // Move objects for the API, only built when asked for
+    public ArrayList<Move> toMoves() {
+        ArrayList<Move> res = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            res.add(Move.fromEncoded(moves[i]));
+        }
+
+        return res;
+    }
+}
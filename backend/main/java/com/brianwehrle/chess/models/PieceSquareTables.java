@@ -0,0 +1,113 @@
+package com.brianwehrle.chess.models;
+
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+
+/*
+    Material and piece-square scores in centipawns, looked up by piece index and square.
+    Positive is good for white, so a black piece's entries are negative.
+
+    The tables are laid out as seen from white's side, rank 8 on top, and mirrored for black.
+    Values from https://www.chessprogramming.org/Simplified_Evaluation_Function
+ */
+public final class PieceSquareTables {
+
+    private static final int[][] TABLES = {
+            // pawn
+            {
+                     0,  0,  0,  0,  0,  0,  0,  0,
+                    50, 50, 50, 50, 50, 50, 50, 50,
+                    10, 10, 20, 30, 30, 20, 10, 10,
+                     5,  5, 10, 25, 25, 10,  5,  5,
+                     0,  0,  0, 20, 20,  0,  0,  0,
+                     5, -5,-10,  0,  0,-10, -5,  5,
+                     5, 10, 10,-20,-20, 10, 10,  5,
+                     0,  0,  0,  0,  0,  0,  0,  0
+            },
+            // knight
+            {
+                    -50,-40,-30,-30,-30,-30,-40,-50,
+                    -40,-20,  0,  0,  0,  0,-20,-40,
+                    -30,  0, 10, 15, 15, 10,  0,-30,
+                    -30,  5, 15, 20, 20, 15,  5,-30,
+                    -30,  0, 15, 20, 20, 15,  0,-30,
+                    -30,  5, 10, 15, 15, 10,  5,-30,
+                    -40,-20,  0,  5,  5,  0,-20,-40,
+                    -50,-40,-30,-30,-30,-30,-40,-50
+            },
+            // bishop
+            {
+                    -20,-10,-10,-10,-10,-10,-10,-20,
+                    -10,  0,  0,  0,  0,  0,  0,-10,
+                    -10,  0,  5, 10, 10,  5,  0,-10,
+                    -10,  5,  5, 10, 10,  5,  5,-10,
+                    -10,  0, 10, 10, 10, 10,  0,-10,
+                    -10, 10, 10, 10, 10, 10, 10,-10,
+                    -10,  5,  0,  0,  0,  0,  5,-10,
+                    -20,-10,-10,-10,-10,-10,-10,-20
+            },
+            // rook
+            {
+                     0,  0,  0,  0,  0,  0,  0,  0,
+                     5, 10, 10, 10, 10, 10, 10,  5,
+                    -5,  0,  0,  0,  0,  0,  0, -5,
+                    -5,  0,  0,  0,  0,  0,  0, -5,
+                    -5,  0,  0,  0,  0,  0,  0, -5,
+                    -5,  0,  0,  0,  0,  0,  0, -5,
+                    -5,  0,  0,  0,  0,  0,  0, -5,
+                     0,  0,  0,  5,  5,  0,  0,  0
+            },
+            // queen
+            {
+                    -20,-10,-10, -5, -5,-10,-10,-20,
+                    -10,  0,  0,  0,  0,  0,  0,-10,
+                    -10,  0,  5,  5,  5,  5,  0,-10,
+                     -5,  0,  5,  5,  5,  5,  0, -5,
+                      0,  0,  5,  5,  5,  5,  0, -5,
+                    -10,  5,  5,  5,  5,  5,  0,-10,
+                    -10,  0,  5,  0,  0,  0,  0,-10,
+                    -20,-10,-10, -5, -5,-10,-10,-20
+            },
+            // king, stay castled
+            {
+                    -30,-40,-40,-50,-50,-40,-40,-30,
+                    -30,-40,-40,-50,-50,-40,-40,-30,
+                    -30,-40,-40,-50,-50,-40,-40,-30,
+                    -30,-40,-40,-50,-50,-40,-40,-30,
+                    -20,-30,-30,-40,-40,-30,-30,-20,
+                    -10,-20,-20,-20,-20,-20,-20,-10,
+                     20, 20,  0,  0,  0,  0, 20, 20,
+                     20, 30, 10,  0,  0, 10, 30, 20
+            }
+    };
+
+    private static final int[] MATERIAL = new int[12];
+    private static final int[][] PIECE_SQUARE = new int[12][64];
+
+    static {
+        for (PieceType type : PieceType.values()) {
+            int white = Position.pieceIndex(Color.WHITE, type);
+            int black = Position.pieceIndex(Color.BLACK, type);
+
+            MATERIAL[white] = type.getValue() * 100;
+            MATERIAL[black] = -type.getValue() * 100;
+
+            for (int square = 0; square < 64; square++) {
+                int row = Bitboard.row(square);
+                int col = Bitboard.col(square);
+
+                PIECE_SQUARE[white][square] = TABLES[type.ordinal()][(7 - row) * 8 + col];
+                PIECE_SQUARE[black][square] = -TABLES[type.ordinal()][row * 8 + col];
+            }
+        }
+    }
+
+    private PieceSquareTables() {}
+
+    public static int material(int piece) {
+        return MATERIAL[piece];
+    }
+
+    public static int pieceSquare(int piece, int square) {
+        return PIECE_SQUARE[piece][square];
+    }
+}
@@ -0,0 +1,220 @@
+package com.brianwehrle.chess.models;
+
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+
+import java.util.Arrays;
+
+/*
+    Bitboard representation of a position: one bitboard per piece type and color,
+    plus the side to move, castling rights, en passant square and move clocks.
+    A mailbox array mirrors the bitboards so "what is on this square" is a single lookup,
+    and the Zobrist key and evaluation terms are kept up to date by every change.
+
+    Pieces are stored as an index from 0 to 11, color.ordinal() * 6 + type.ordinal().
+ */
+public class Position {
+    public static final int EMPTY = -1;
+    public static final int NO_SQUARE = -1;
+
+    // castling rights flags
+    public static final int WHITE_SHORT = 1;
+    public static final int WHITE_LONG = 2;
+    public static final int BLACK_SHORT = 4;
+    public static final int BLACK_LONG = 8;
+    public static final int ALL_CASTLING = 15;
+
+    private static final PieceType[] TYPES = PieceType.values();
+    private static final Color[] COLORS = Color.values();
+
+    private final long[] pieceBitboards;
+    private final long[] colorBitboards;
+    private final int[] mailbox;
+    private Color sideToMove;
+    private int castlingRights;
+    private int enPassantSquare;
+    private int halfMoveClock;
+    private int moveNumber;
+    private long key;
+    // white minus black, in centipawns
+    private int material;
+    private int pieceSquare;
+
+    public Position() {
+        pieceBitboards = new long[12];
+        colorBitboards = new long[2];
+        mailbox = new int[64];
+        clear();
+    }
+
+    public Position(Position other) {
+        pieceBitboards = other.pieceBitboards.clone();
+        colorBitboards = other.colorBitboards.clone();
+        mailbox = other.mailbox.clone();
+        sideToMove = other.sideToMove;
+        castlingRights = other.castlingRights;
+        enPassantSquare = other.enPassantSquare;
+        halfMoveClock = other.halfMoveClock;
+        moveNumber = other.moveNumber;
+        key = other.key;
+        material = other.material;
+        pieceSquare = other.pieceSquare;
+    }
+
+    public static int pieceIndex(Color color, PieceType type) {
+        return color.ordinal() * 6 + type.ordinal();
+    }
+
+    public static Color colorOf(int piece) {
+        return COLORS[piece / 6];
+    }
+
+    public static PieceType typeOf(int piece) {
+        return TYPES[piece % 6];
+    }
+
+    public void clear() {
+        Arrays.fill(pieceBitboards, 0L);
+        Arrays.fill(colorBitboards, 0L);
+        Arrays.fill(mailbox, EMPTY);
+        sideToMove = Color.WHITE;
+        castlingRights = 0;
+        enPassantSquare = NO_SQUARE;
+        halfMoveClock = 0;
+        moveNumber = 1;
+        key = 0L;
+        material = 0;
+        pieceSquare = 0;
+    }
+
+    public void addPiece(int square, int piece) {
+        long bit = 1L << square;
+        pieceBitboards[piece] |= bit;
+        colorBitboards[piece / 6] |= bit;
+        mailbox[square] = piece;
+        key ^= Zobrist.piece(piece, square);
+        material += PieceSquareTables.material(piece);
+        pieceSquare += PieceSquareTables.pieceSquare(piece, square);
+    }
+
+    public void addPiece(int square, Color color, PieceType type) {
+        addPiece(square, pieceIndex(color, type));
+    }
+
+    // returns the piece that was removed, or EMPTY
+    public int removePiece(int square) {
+        int piece = mailbox[square];
+        if (piece == EMPTY) return EMPTY;
+
+        long bit = 1L << square;
+        pieceBitboards[piece] &= ~bit;
+        colorBitboards[piece / 6] &= ~bit;
+        mailbox[square] = EMPTY;
+        key ^= Zobrist.piece(piece, square);
+        material -= PieceSquareTables.material(piece);
+        pieceSquare -= PieceSquareTables.pieceSquare(piece, square);
+        return piece;
+    }
+
+    // moves the piece on start to the empty square end
+    public void movePiece(int start, int end) {
+        int piece = mailbox[start];
+        long bits = (1L << start) | (1L << end);
+        pieceBitboards[piece] ^= bits;
+        colorBitboards[piece / 6] ^= bits;
+        mailbox[start] = EMPTY;
+        mailbox[end] = piece;
+        key ^= Zobrist.piece(piece, start) ^ Zobrist.piece(piece, end);
+        pieceSquare += PieceSquareTables.pieceSquare(piece, end) - PieceSquareTables.pieceSquare(piece, start);
+    }
+
+    public int pieceAt(int square) {
+        return mailbox[square];
+    }
+
+    public boolean isEmpty(int square) {
+        return mailbox[square] == EMPTY;
+    }
+
+    public long getBitboard(int piece) {
+        return pieceBitboards[piece];
+    }
+
+    public long getBitboard(Color color, PieceType type) {
+        return pieceBitboards[pieceIndex(color, type)];
+    }
+
+    public long getOccupancy(Color color) {
+        return colorBitboards[color.ordinal()];
+    }
+
+    public long getOccupancy() {
+        return colorBitboards[0] | colorBitboards[1];
+    }
+
+    public int getKingSquare(Color color) {
+        long king = pieceBitboards[pieceIndex(color, PieceType.KING)];
+        return king == 0 ? NO_SQUARE : Long.numberOfTrailingZeros(king);
+    }
+
+    public Color getSideToMove() {
+        return sideToMove;
+    }
+
+    public void setSideToMove(Color sideToMove) {
+        if (this.sideToMove != sideToMove) key ^= Zobrist.blackToMove();
+        this.sideToMove = sideToMove;
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public void setCastlingRights(int castlingRights) {
+        key ^= Zobrist.castling(this.castlingRights) ^ Zobrist.castling(castlingRights);
+        this.castlingRights = castlingRights;
+    }
+
+    public boolean canCastle(int flag) {
+        return (castlingRights & flag) != 0;
+    }
+
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    public void setEnPassantSquare(int enPassantSquare) {
+        key ^= Zobrist.enPassant(this.enPassantSquare) ^ Zobrist.enPassant(enPassantSquare);
+        this.enPassantSquare = enPassantSquare;
+    }
+
+    public int getHalfMoveClock() {
+        return halfMoveClock;
+    }
+
+    public void setHalfMoveClock(int halfMoveClock) {
+        this.halfMoveClock = halfMoveClock;
+    }
+
+    public int getMoveNumber() {
+        return moveNumber;
+    }
+
+    public void setMoveNumber(int moveNumber) {
+        this.moveNumber = moveNumber;
+    }
+
+    // material balance in centipawns, positive is good for white
+    public int getMaterial() {
+        return material;
+    }
+
+    // piece-square balance in centipawns, positive is good for white
+    public int getPieceSquare() {
+        return pieceSquare;
+    }
+
+    // Zobrist key of the position, including side to move, castling rights and en passant
+    public long getKey() {
+        return key;
+    }
+}
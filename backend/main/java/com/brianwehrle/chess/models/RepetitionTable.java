@@ -0,0 +1,87 @@
+package com.brianwehrle.chess.models;
+
+import java.util.Arrays;
+
+/*
+    Counts how often each position (by Zobrist key) has occurred.
+    Open addressing over primitive arrays, so counting a position never allocates
+    unless the table has to grow.
+ */
+public class RepetitionTable {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long[] keys;
+    // entries that drop back to 0 keep their slot, so probing still finds the keys after them
+    private int[] counts;
+    private boolean[] used;
+    private int size;
+
+    public RepetitionTable() {
+        keys = new long[INITIAL_CAPACITY];
+        counts = new int[INITIAL_CAPACITY];
+        used = new boolean[INITIAL_CAPACITY];
+    }
+
+    // returns how many times the position has now occurred
+    public int increment(long key) {
+        int slot = findSlot(key);
+
+        if (!used[slot]) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                slot = findSlot(key);
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+
+        return ++counts[slot];
+    }
+
+    public void decrement(long key) {
+        int slot = findSlot(key);
+        if (used[slot] && counts[slot] > 0) counts[slot]--;
+    }
+
+    public int count(long key) {
+        int slot = findSlot(key);
+        return used[slot] ? counts[slot] : 0;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    private int findSlot(long key) {
+        int mask = keys.length - 1;
+        int slot = (int)(key ^ (key >>> 32)) & mask;
+
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        boolean[] oldUsed = used;
+
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = findSlot(oldKeys[i]);
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
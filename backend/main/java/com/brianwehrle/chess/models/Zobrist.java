@@ -0,0 +1,54 @@
+package com.brianwehrle.chess.models;
+
+import java.util.SplittableRandom;
+
+/*
+    Random keys for Zobrist hashing. A position's key is the XOR of the key of every
+    piece on its square, the castling rights, the en passant file and the side to move,
+    so Position can update it with a couple of XORs per change instead of rehashing.
+ */
+public final class Zobrist {
+    // fixed seed so keys are the same on every run and can be stored
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
+    private static final long[][] PIECES = new long[12][64];
+    private static final long[] CASTLING = new long[16];
+    private static final long[] EN_PASSANT_FILE = new long[8];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+
+        for (long[] piece : PIECES) {
+            for (int square = 0; square < 64; square++) {
+                piece[square] = random.nextLong();
+            }
+        }
+        // no rights hashes to nothing, so an empty board with white to move has key 0
+        for (int rights = 1; rights < CASTLING.length; rights++) {
+            CASTLING[rights] = random.nextLong();
+        }
+        for (int file = 0; file < EN_PASSANT_FILE.length; file++) {
+            EN_PASSANT_FILE[file] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {}
+
+    public static long piece(int piece, int square) {
+        return PIECES[piece][square];
+    }
+
+    public static long castling(int rights) {
+        return CASTLING[rights];
+    }
+
+    public static long enPassant(int square) {
+        return square == Position.NO_SQUARE ? 0L : EN_PASSANT_FILE[Bitboard.col(square)];
+    }
+
+    public static long blackToMove() {
+        return BLACK_TO_MOVE;
+    }
+}
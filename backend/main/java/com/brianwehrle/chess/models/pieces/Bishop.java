@@ -4,22 +4,25 @@ import com.brianwehrle.chess.models.Color;
 import com.brianwehrle.chess.models.Direction;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
 
 public class Bishop extends Piece{
+
+    public static final List<Direction> DIRECTIONS = List.of(
+            new Direction(1, 1),
+            new Direction(-1, -1),
+            new Direction(1, -1),
+            new Direction(-1, 1)
+    );
+
     public Bishop(Color color) {
         super(color);
         super.type = PieceType.BISHOP;
-        super.value = 3;
+        super.value = type.getValue();
     }
 
     @Override
     public ArrayList<Direction> getDirections() {
-        return new ArrayList<>(Arrays.asList(
-                new Direction(1, 1),
-                new Direction(-1, -1),
-                new Direction(1, -1),
-                new Direction(-1, 1)
-        ));
+        return new ArrayList<>(DIRECTIONS);
     }
 }
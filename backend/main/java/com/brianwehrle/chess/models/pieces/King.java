@@ -4,10 +4,21 @@ import com.brianwehrle.chess.models.Color;
 import com.brianwehrle.chess.models.Direction;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
 
 public class King extends Piece {
 
+    public static final List<Direction> DIRECTIONS = List.of(
+            new Direction(1, 1),
+            new Direction(-1, -1),
+            new Direction(1, -1),
+            new Direction(-1, 1),
+            new Direction(0, 1),
+            new Direction(0, -1),
+            new Direction(1, 0),
+            new Direction(-1, 0)
+    );
+
     public King(Color color) {
         super(color);
         super.type = PieceType.KING;
@@ -15,15 +26,6 @@ public class King extends Piece {
 
     @Override
     public ArrayList<Direction> getDirections() {
-        return new ArrayList<>(Arrays.asList(
-                new Direction(1, 1),
-                new Direction(-1, -1),
-                new Direction(1, -1),
-                new Direction(-1, 1),
-                new Direction(0, 1),
-                new Direction(0, -1),
-                new Direction(1, 0),
-                new Direction(-1, 0)
-        ));
+        return new ArrayList<>(DIRECTIONS);
     }
 }
@@ -4,26 +4,29 @@ import com.brianwehrle.chess.models.Color;
 import com.brianwehrle.chess.models.Direction;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
 
 public class Knight extends Piece {
+
+    public static final List<Direction> DIRECTIONS = List.of(
+            new Direction(2, 1),
+            new Direction(2, -1),
+            new Direction(-2, 1),
+            new Direction(-2, -1),
+            new Direction(1, 2),
+            new Direction(1, -2),
+            new Direction(-1, 2),
+            new Direction(-1, -2)
+    );
+
     public Knight(Color color) {
         super(color);
         super.type = PieceType.KNIGHT;
-        super.value = 3;
+        super.value = type.getValue();
     }
 
     @Override
     public ArrayList<Direction> getDirections() {
-        return new ArrayList<>(Arrays.asList(
-                new Direction(2, 1),
-                new Direction(2, -1),
-                new Direction(-2, 1),
-                new Direction(-2, -1),
-                new Direction(1, 2),
-                new Direction(1, -2),
-                new Direction(-1, 2),
-                new Direction(-1, -2)
-        ));
+        return new ArrayList<>(DIRECTIONS);
     }
 }
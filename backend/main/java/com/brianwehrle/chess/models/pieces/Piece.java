@@ -9,12 +9,23 @@ import java.util.ArrayList;
 public abstract class Piece {
 
     public enum PieceType {
-        PAWN,
-        KNIGHT,
-        BISHOP,
-        ROOK,
-        QUEEN,
-        KING
+        PAWN(1),
+        KNIGHT(3),
+        BISHOP(3),
+        ROOK(5),
+        QUEEN(9),
+        KING(0);
+
+        // in pawns, the king is never traded so it has none
+        private final int value;
+
+        PieceType(int value) {
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
     }
 
     protected PieceType type;
@@ -47,6 +58,10 @@ public abstract class Piece {
         return color;
     }
 
+    public int getValue() {
+        return value;
+    }
+
     public abstract ArrayList<Direction> getDirections();
 
     public String toString(int code) {
@@ -4,22 +4,24 @@ import com.brianwehrle.chess.models.Color;
 import com.brianwehrle.chess.models.Direction;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
 
 public class Rook extends Piece {
 
+    public static final List<Direction> DIRECTIONS = List.of(
+            new Direction(0, 1),
+            new Direction(0, -1),
+            new Direction(1, 0),
+            new Direction(-1, 0)
+    );
+
     public Rook(Color color) {
         super(color);
         super.type = PieceType.ROOK;
-        super.value = 5;
+        super.value = type.getValue();
     }
     @Override
     public ArrayList<Direction> getDirections() {
-        return new ArrayList<>(Arrays.asList(
-                new Direction(0, 1),
-                new Direction(0, -1),
-                new Direction(1, 0),
-                new Direction(-1, 0)
-        ));
+        return new ArrayList<>(DIRECTIONS);
     }
 }
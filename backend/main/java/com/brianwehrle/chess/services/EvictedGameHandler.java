@@ -0,0 +1,11 @@
+package com.brianwehrle.chess.services;
+
+import com.brianwehrle.chess.models.Game;
+
+// called with games that were evicted from the GameStore before they finished,
+// so they can be written somewhere and picked up again later
+@FunctionalInterface
+public interface EvictedGameHandler {
+
+    void gameEvicted(Game game);
+}
@@ -0,0 +1,184 @@
+package com.brianwehrle.chess.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Server-sent events for everyone watching a game, players and spectators alike.
+
+    An event is written to JSON once and queued for every subscriber of the game, each
+    subscriber builds its own SSE event from it when it is sent. Publishing never blocks,
+    each subscriber's queue is sent from a small pool of threads, one send at a time per
+    subscriber, so a slow connection only holds up itself. A subscriber that falls more
+    than maxQueued events behind is disconnected, and gets the current position again when
+    it reconnects.
+ */
+@Component
+public class GameEvents implements Closeable {
+
+    private final ConcurrentMap<UUID, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService senders;
+    private final int maxQueued;
+    private final long timeoutMillis;
+
+    public GameEvents(@Value("${chess.events.threads:4}") int threads,
+                      @Value("${chess.events.max-queued:64}") int maxQueued,
+                      @Value("${chess.events.timeout:PT30M}") Duration timeout) {
+        AtomicInteger count = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "game-events-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxQueued = maxQueued;
+        this.timeoutMillis = timeout.toMillis();
+    }
+
+    // starts with the current position, and ends with it if the game is already over.
+    // call holding the game's lock, so no move can come in between
+    public SseEmitter subscribe(UUID gameId, long ply, String positionJson, boolean over) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(gameId, emitter);
+
+        emitter.onCompletion(subscriber::remove);
+        emitter.onTimeout(subscriber::remove);
+        emitter.onError(e -> subscriber.remove());
+
+        if (!over) {
+            // added in the same step as the set is made, so a removal can't drop it in between
+            subscribers.compute(gameId, (id, watching) -> {
+                if (watching == null) watching = ConcurrentHashMap.newKeySet();
+                watching.add(subscriber);
+                return watching;
+            });
+        }
+        subscriber.offer(new Event("position", ply, positionJson), over);
+        return emitter;
+    }
+
+    public boolean hasSubscribers(UUID gameId) {
+        Set<Subscriber> watching = subscribers.get(gameId);
+        return watching != null && !watching.isEmpty();
+    }
+
+    // call holding the game's lock, so events go out in the order the moves were made.
+    // the streams are closed after the last event of a game
+    public void publish(UUID gameId, String name, long ply, String json, boolean last) {
+        Set<Subscriber> watching = subscribers.get(gameId);
+        if (watching == null) return;
+
+        Event event = new Event(name, ply, json);
+        for (Subscriber subscriber : watching) subscriber.offer(event, last);
+    }
+
+    public int getSubscriberCount() {
+        int count = 0;
+        for (Set<Subscriber> watching : subscribers.values()) count += watching.size();
+        return count;
+    }
+
+    @Override
+    public void close() {
+        senders.shutdownNow();
+    }
+
+    // a builder adds to what it has built every time it is built, so each send makes its own
+    private record Event(String name, long ply, String json) {
+        private SseEmitter.SseEventBuilder build() {
+            return SseEmitter.event().name(name).id(String.valueOf(ply)).data(json, MediaType.APPLICATION_JSON);
+        }
+    }
+
+    private final class Subscriber {
+        private final UUID gameId;
+        private final SseEmitter emitter;
+
+        // guarded by this
+        private final ArrayDeque<Event> queue = new ArrayDeque<>();
+        private boolean sending;
+        private boolean finishing;
+        private boolean closed;
+
+        private Subscriber(UUID gameId, SseEmitter emitter) {
+            this.gameId = gameId;
+            this.emitter = emitter;
+        }
+
+        private void offer(Event event, boolean last) {
+            boolean tooSlow = false;
+            synchronized (this) {
+                if (closed || finishing) return;
+
+                if (queue.size() >= maxQueued) {
+                    tooSlow = closed = true;
+                    queue.clear();
+                } else {
+                    queue.add(event);
+                    finishing = last;
+                    if (sending) return;
+                    sending = true;
+                }
+            }
+
+            if (tooSlow) {
+                remove();
+                emitter.complete();
+            } else {
+                senders.execute(this::send);
+            }
+        }
+
+        private void send() {
+            while (true) {
+                Event event;
+                synchronized (this) {
+                    event = queue.poll();
+                    if (event == null) {
+                        sending = false;
+                        if (!finishing) return;
+                        closed = true;
+                    }
+                }
+
+                if (event == null) {
+                    remove();
+                    emitter.complete();
+                    return;
+                }
+
+                try {
+                    emitter.send(event.build());
+                } catch (IOException | IllegalStateException e) {
+                    // the client went away
+                    synchronized (this) {
+                        closed = true;
+                        queue.clear();
+                    }
+                    remove();
+                    return;
+                }
+            }
+        }
+
+        private void remove() {
+            subscribers.computeIfPresent(gameId, (id, watching) -> {
+                watching.remove(this);
+                return watching.isEmpty() ? null : watching;
+            });
+        }
+    }
+}
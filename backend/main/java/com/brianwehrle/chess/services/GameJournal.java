@@ -0,0 +1,468 @@
+package com.brianwehrle.chess.services;
+
+import com.brianwehrle.chess.models.Game;
+import com.brianwehrle.chess.models.Player;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/*
+    Append-only log of every game started and move made, so games survive a restart.
+
+    Records go into a buffer in memory and one flusher thread writes them out. Everything
+    that builds up while one write is being forced to disk goes out in the next write, with
+    a single force for all of it (group commit), and a move only waits for the force that
+    covers it.
+
+    The log is split into segments. A snapshot moves on to a new segment, writes the start
+    position and moves of every game, then deletes the older segments and snapshots.
+    Recovery maps the newest snapshot and the segments from its one on, and reads them all
+    at once across the cores, each into what it holds for every game: the start position if
+    the game started there and its moves. These are then put together in file order. Moves
+    carry their ply, so a move in both the snapshot and a segment is only counted once.
+
+    Records, big endian:
+        GAME_STARTED    type (1), game id (16), fen length (2), fen in UTF-8
+        MOVE_MADE       type (1), game id (16), ply (2), encoded move (4)
+    A record cut short by a crash at the end of a segment is ignored.
+ */
+public class GameJournal implements Closeable {
+    private static final byte GAME_STARTED = 1;
+    private static final byte MOVE_MADE = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    public record Stats(long records, long commits, long bytes, long segment) {}
+
+    // a game as it was journaled, moves are encoded
+    public record SavedGame(UUID gameId, String startFen, int[] moves) {
+        // the game as it stands, read holding its lock
+        public static SavedGame of(Game game) {
+            synchronized (game) {
+                return new SavedGame(game.getGameId(), game.getStartFen(), game.getMoveHistory());
+            }
+        }
+
+        // the moves were legal when they were made, so they are played without checking them again
+        public Game toGame() {
+            Game game = new Game(new Player("white"), new Player("black"), gameId, startFen);
+            game.replayMoves(moves);
+            return game;
+        }
+    }
+
+    // a game as one file has it: the start position if it was started there, null otherwise,
+    // and a run of moves from firstPly
+    private static final class GameBuilder {
+        private final String startFen;
+        private int firstPly;
+        private int[] moves = new int[16];
+        private int count;
+
+        private GameBuilder(String startFen) {
+            this.startFen = startFen;
+        }
+
+        private void add(int move) {
+            if (count == moves.length) moves = Arrays.copyOf(moves, count * 2);
+            moves[count++] = move;
+        }
+
+        // moves that don't carry on from the run are left out
+        private void add(int ply, int move) {
+            if (count == 0) firstPly = ply;
+            if (ply == firstPly + count) add(move);
+        }
+
+        // the moves of a later file from where these leave off
+        private void append(GameBuilder later) {
+            for (int i = count + firstPly - later.firstPly; i >= 0 && i < later.count; i++) add(later.moves[i]);
+        }
+    }
+
+    // null when disabled
+    private final Path directory;
+    private final boolean fsync;
+    private Thread flusher;
+
+    // everything below is guarded by this
+    private FileChannel channel;
+    private long segment;
+    private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer writing = ByteBuffer.allocate(BUFFER_SIZE);
+    // records appended, and how many of them are on disk
+    private long appended;
+    private long durable;
+    private IOException failure;
+    private boolean closed;
+    private long commits;
+    private long bytes;
+
+    private GameJournal(Path directory, boolean fsync) {
+        this.directory = directory;
+        this.fsync = fsync;
+    }
+
+    // a journal that records nothing
+    public static GameJournal disabled() {
+        return new GameJournal(null, false);
+    }
+
+    // appends to a new segment after any already in the directory, recover reads those
+    public static GameJournal open(Path directory, boolean fsync) throws IOException {
+        Files.createDirectories(directory);
+
+        GameJournal journal = new GameJournal(directory, fsync);
+        long last = -1;
+        for (long index : journal.indices(SEGMENT_PREFIX, SEGMENT_SUFFIX)) last = Math.max(last, index);
+        for (long index : journal.indices(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) last = Math.max(last, index);
+
+        journal.segment = last + 1;
+        journal.channel = journal.openSegment(journal.segment);
+        journal.flusher = new Thread(journal::flushLoop, "game-journal");
+        journal.flusher.setDaemon(true);
+        journal.flusher.start();
+        return journal;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    // returns the number to pass to awaitDurable
+    public long gameStarted(Game game) {
+        if (directory == null) return 0;
+
+        byte[] fen = game.getStartFen().getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            ByteBuffer buffer = reserve(1 + 16 + 2 + fen.length);
+            buffer.put(GAME_STARTED);
+            putId(buffer, game.getGameId());
+            buffer.putShort((short) fen.length);
+            buffer.put(fen);
+            return append();
+        }
+    }
+
+    // ply counts from 0 for the first move of the game
+    public long moveMade(UUID gameId, int ply, int move) {
+        if (directory == null) return 0;
+
+        synchronized (this) {
+            ByteBuffer buffer = reserve(1 + 16 + 2 + 4);
+            buffer.put(MOVE_MADE);
+            putId(buffer, gameId);
+            buffer.putShort((short) ply);
+            buffer.putInt(move);
+            return append();
+        }
+    }
+
+    // blocks until the record and everything before it is on disk
+    public synchronized void awaitDurable(long sequence) {
+        boolean interrupted = false;
+
+        while (durable < sequence && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) Thread.currentThread().interrupt();
+        if (durable < sequence) throw new UncheckedIOException("Journal write failed", failure);
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(appended, commits, bytes, segment);
+    }
+
+    // the games that were in the journal when it was opened, to call once before anything is appended.
+    // the files are mapped and only the moves are collected, turning them into Games is left to the caller
+    public List<SavedGame> recover() throws IOException {
+        if (directory == null) return List.of();
+
+        long from = 0;
+        for (long index : indices(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (index < segment) from = Math.max(from, index);
+        }
+
+        // the snapshot first, then the segments in order
+        List<ByteBuffer> files = new ArrayList<>();
+        Path snapshot = path(SNAPSHOT_PREFIX, from, SNAPSHOT_SUFFIX);
+        boolean hasSnapshot = Files.exists(snapshot);
+        if (hasSnapshot) files.add(map(snapshot));
+        for (long index : indices(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (index >= from && index < segment) files.add(map(path(SEGMENT_PREFIX, index, SEGMENT_SUFFIX)));
+        }
+
+        List<Map<UUID, GameBuilder>> parts = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) parts.add(new LinkedHashMap<>());
+        IntStream.range(0, files.size()).parallel().forEach(i -> {
+            if (i == 0 && hasSnapshot) {
+                readSnapshot(files.get(i), parts.get(i));
+            } else {
+                readSegment(files.get(i), parts.get(i));
+            }
+        });
+
+        Map<UUID, GameBuilder> games = new LinkedHashMap<>();
+        for (Map<UUID, GameBuilder> part : parts) {
+            for (Map.Entry<UUID, GameBuilder> entry : part.entrySet()) {
+                GameBuilder game = games.get(entry.getKey());
+                GameBuilder later = entry.getValue();
+
+                if (game != null) {
+                    game.append(later);
+                } else if (later.startFen != null) {
+                    // a move is only kept if it follows the one before, so the run has to start at the first
+                    if (later.firstPly != 0) later = new GameBuilder(later.startFen);
+                    games.put(entry.getKey(), later);
+                }
+            }
+        }
+
+        List<SavedGame> res = new ArrayList<>(games.size());
+        for (Map.Entry<UUID, GameBuilder> entry : games.entrySet()) {
+            GameBuilder game = entry.getValue();
+            res.add(new SavedGame(entry.getKey(), game.startFen, Arrays.copyOf(game.moves, game.count)));
+        }
+        return res;
+    }
+
+    // everything journaled so far is covered by the snapshot, so the segments before it can go.
+    // the games are only collected once the new segment is open, so one started in between is
+    // in the new segment if it isn't in the snapshot
+    public void snapshot(Supplier<? extends Collection<SavedGame>> gameSupplier) throws IOException {
+        if (directory == null) return;
+
+        long snapshotSegment;
+        synchronized (this) {
+            // the old segment gets everything appended so far, the new one everything after
+            while (durable < appended && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (failure != null) throw failure;
+
+            channel.close();
+            segment++;
+            channel = openSegment(segment);
+            snapshotSegment = segment;
+        }
+
+        Collection<SavedGame> games = gameSupplier.get();
+
+        Path temp = directory.resolve(SNAPSHOT_PREFIX + snapshotSegment + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(games.size());
+
+            for (SavedGame game : games) {
+                out.writeLong(game.gameId().getMostSignificantBits());
+                out.writeLong(game.gameId().getLeastSignificantBits());
+                out.writeUTF(game.startFen());
+                out.writeInt(game.moves().length);
+                for (int move : game.moves()) out.writeInt(move);
+            }
+        }
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            file.force(true);
+        }
+        Files.move(temp, path(SNAPSHOT_PREFIX, snapshotSegment, SNAPSHOT_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+
+        for (long index : indices(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (index < snapshotSegment) Files.deleteIfExists(path(SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        }
+        for (long index : indices(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (index < snapshotSegment) Files.deleteIfExists(path(SNAPSHOT_PREFIX, index, SNAPSHOT_SUFFIX));
+        }
+    }
+
+    // writes out anything still pending first
+    @Override
+    public void close() throws IOException {
+        if (directory == null) return;
+
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            channel.close();
+        }
+    }
+
+    // whichever way this stops, waiters are woken with an error rather than left waiting for a write
+    private void flushLoop() {
+        IOException stopped = new IOException("Journal is closed");
+        try {
+            writeUntilClosed();
+        } catch (InterruptedException e) {
+            stopped = new InterruptedIOException("Journal writer was interrupted");
+        } catch (IOException e) {
+            stopped = e;
+        } finally {
+            synchronized (this) {
+                if (failure == null) failure = stopped;
+                notifyAll();
+            }
+        }
+    }
+
+    private void writeUntilClosed() throws IOException, InterruptedException {
+        while (true) {
+            ByteBuffer batch;
+            long upTo;
+            FileChannel target;
+
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) wait();
+                if (pending.position() == 0) return;
+
+                batch = pending;
+                pending = writing;
+                writing = batch;
+                upTo = appended;
+                target = channel;
+            }
+
+            batch.flip();
+            int size = batch.remaining();
+            while (batch.hasRemaining()) target.write(batch);
+            if (fsync) target.force(false);
+            batch.clear();
+
+            synchronized (this) {
+                durable = upTo;
+                commits++;
+                bytes += size;
+                notifyAll();
+            }
+        }
+    }
+
+    // called holding the lock
+    private ByteBuffer reserve(int size) {
+        if (pending.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+
+        return pending;
+    }
+
+    // called holding the lock
+    private long append() {
+        notifyAll();
+        return ++appended;
+    }
+
+    private static void putId(ByteBuffer buffer, UUID gameId) {
+        buffer.putLong(gameId.getMostSignificantBits());
+        buffer.putLong(gameId.getLeastSignificantBits());
+    }
+
+    private static UUID getId(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            return file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        }
+    }
+
+    // written by snapshot, the fen as writeUTF writes it
+    private static void readSnapshot(ByteBuffer buffer, Map<UUID, GameBuilder> games) {
+        int count = buffer.getInt();
+
+        for (int i = 0; i < count; i++) {
+            UUID gameId = getId(buffer);
+            GameBuilder game = new GameBuilder(getString(buffer));
+
+            game.count = buffer.getInt();
+            game.moves = new int[Math.max(game.count, 16)];
+            buffer.asIntBuffer().get(game.moves, 0, game.count);
+            buffer.position(buffer.position() + game.count * 4);
+            games.put(gameId, game);
+        }
+    }
+
+    private static void readSegment(ByteBuffer buffer, Map<UUID, GameBuilder> games) {
+        try {
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                UUID gameId = getId(buffer);
+
+                if (type == GAME_STARTED) {
+                    String fen = getString(buffer);
+                    games.putIfAbsent(gameId, new GameBuilder(fen));
+                } else if (type == MOVE_MADE) {
+                    int ply = buffer.getShort() & 0xFFFF;
+                    int move = buffer.getInt();
+
+                    // the game may have been started in an earlier file
+                    games.computeIfAbsent(gameId, id -> new GameBuilder(null)).add(ply, move);
+                } else {
+                    return;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // the last record was cut short
+        }
+    }
+
+    // unsigned short length, then the bytes
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private FileChannel openSegment(long index) throws IOException {
+        return FileChannel.open(path(SEGMENT_PREFIX, index, SEGMENT_SUFFIX), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private Path path(String prefix, long index, String suffix) {
+        return directory.resolve(String.format("%s%020d%s", prefix, index, suffix));
+    }
+
+    // indices of the files with the prefix and suffix, in order
+    private List<Long> indices(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                    .map(name -> Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
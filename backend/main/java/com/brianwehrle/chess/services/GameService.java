@@ -1,9 +1,18 @@
 package com.brianwehrle.chess.services;
 
+import com.brianwehrle.chess.dtos.BatchMoveDto;
+import com.brianwehrle.chess.dtos.EvaluationDto;
+import com.brianwehrle.chess.dtos.MoveResultDto;
 import com.brianwehrle.chess.dtos.PositionDto;
+import com.brianwehrle.chess.dtos.SerializedPosition;
+import com.brianwehrle.chess.engine.OpeningBook;
+import com.brianwehrle.chess.engine.SearchResult;
+import com.brianwehrle.chess.engine.TranspositionTable;
 import com.brianwehrle.chess.models.Game;
 import com.brianwehrle.chess.models.Move;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface GameService {
@@ -12,5 +21,23 @@ public interface GameService {
 
     UUID startNewGame();
 
+    UUID startNewGame(String fen);
+
+    List<UUID> startNewGames(int count, String fen);
+
+    List<MoveResultDto> makeMoves(List<BatchMoveDto> moves);
+
     PositionDto getPosition(UUID gameId);
+
+    SerializedPosition getSerializedPosition(UUID gameId);
+
+    SseEmitter subscribe(UUID gameId);
+
+    EvaluationDto getEvaluation(UUID gameId);
+
+    SearchResult findBestMove(UUID gameId, long timeMillis, int threads);
+
+    List<OpeningBook.BookMove> getBookMoves(UUID gameId);
+
+    TranspositionTable.Stats getTranspositionTableStats();
 }
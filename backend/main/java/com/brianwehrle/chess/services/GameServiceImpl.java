@@ -1,37 +1,368 @@
 package com.brianwehrle.chess.services;
 
+import com.brianwehrle.chess.dtos.BatchMoveDto;
+import com.brianwehrle.chess.dtos.EvaluationDto;
+import com.brianwehrle.chess.dtos.GameEventDto;
+import com.brianwehrle.chess.dtos.MoveResultDto;
 import com.brianwehrle.chess.dtos.PositionDto;
+import com.brianwehrle.chess.dtos.SerializedPosition;
+import com.brianwehrle.chess.engine.OpeningBook;
+import com.brianwehrle.chess.engine.ParallelSearch;
+import com.brianwehrle.chess.engine.SearchLimits;
+import com.brianwehrle.chess.engine.SearchResult;
+import com.brianwehrle.chess.engine.Tablebase;
+import com.brianwehrle.chess.engine.TablebaseResult;
+import com.brianwehrle.chess.engine.TranspositionTable;
+import com.brianwehrle.chess.exceptions.GameNotFoundException;
 import com.brianwehrle.chess.models.Game;
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Color;
 import com.brianwehrle.chess.models.Game.GameStatus;
 import com.brianwehrle.chess.models.Move;
 import com.brianwehrle.chess.models.Player;
+import com.brianwehrle.chess.utilities.Converter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/*
+    Games are kept in the GameStore and looked up without locking, and every
+    read or move of a game holds that game's monitor. Moves on different games
+    run in parallel, moves on the same game happen one at a time in the order
+    they get the lock.
+
+    Games started and moves made are written to the GameJournal, and a move isn't
+    acknowledged until it is on disk. Moves are also pushed to the game's GameEvents
+    subscribers.
+
+    On startup the journal only gives back each game's moves, and a game is only
+    replayed the first time it is asked for, so startup doesn't wait on replaying
+    every game. Unfinished games evicted from the store are kept the same way.
+    Snapshots write games nobody has asked for yet as they were saved.
+ */
 @Qualifier("GameServiceImpl")
 @Service
 public class GameServiceImpl implements GameService {
 
-    private static Map<UUID, Game> games = new HashMap<>();
+    private final GameStore games;
+    private final TranspositionTable transpositionTable;
+    private final OpeningBook openingBook;
+    private final Tablebase tablebase;
+    private final ExecutorService searchExecutor;
+    private final GameJournal journal;
+    private final ObjectMapper objectMapper;
+    private final GameEvents events;
+    // games from the journal that haven't been replayed yet, and unfinished games
+    // evicted from the store
+    private final ConcurrentMap<UUID, GameJournal.SavedGame> savedGames = new ConcurrentHashMap<>();
+    // restores hold the read lock, so a snapshot never sees a game between savedGames
+    // and the store
+    private final ReadWriteLock restoreLock = new ReentrantReadWriteLock();
+    private final long maxSearchMillis;
+    private final int maxSearchThreads;
+
+    public GameServiceImpl(GameStore games, TranspositionTable transpositionTable, OpeningBook openingBook, Tablebase tablebase,
+                           ExecutorService searchExecutor, GameJournal journal, ObjectMapper objectMapper, GameEvents events,
+                           @Value("${chess.engine.max-search-millis:10000}") long maxSearchMillis,
+                           @Value("${chess.engine.max-threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int maxSearchThreads) {
+        this.games = games;
+        this.transpositionTable = transpositionTable;
+        this.openingBook = openingBook;
+        this.tablebase = tablebase;
+        this.searchExecutor = searchExecutor;
+        this.journal = journal;
+        this.objectMapper = objectMapper;
+        this.events = events;
+        this.maxSearchMillis = maxSearchMillis;
+        this.maxSearchThreads = maxSearchThreads;
+
+        List<GameJournal.SavedGame> saved;
+        try {
+            saved = journal.recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't recover games from the journal", e);
+        }
+        for (GameJournal.SavedGame game : saved) savedGames.put(game.gameId(), game);
+
+        // an evicted game is still in the journal, so it has to be in the next snapshot
+        // and come back when asked for
+        if (journal.isEnabled()) games.setEvictedGameHandler(this::gameEvicted);
+    }
+
+    private void gameEvicted(Game game) {
+        savedGames.put(game.getGameId(), GameJournal.SavedGame.of(game));
+    }
+
+    // replays a saved game into the store the first time it is asked for, once however
+    // many ask at the same time
+    private Game restore(UUID gameId) {
+        GameJournal.SavedGame saved = savedGames.get(gameId);
+        if (saved == null) return games.get(gameId);
+
+        restoreLock.readLock().lock();
+        try {
+            synchronized (saved) {
+                if (savedGames.get(gameId) == saved) {
+                    games.put(saved.toGame());
+                    // the game may have been evicted again already
+                    savedGames.remove(gameId, saved);
+                }
+            }
+        } finally {
+            restoreLock.readLock().unlock();
+        }
+        return games.get(gameId);
+    }
 
     @Override
     public UUID startNewGame() {
-        UUID gameId = UUID.randomUUID();
-        Game game = new Game(new Player("white"), new Player("black"), gameId);
-        games.put(gameId, game);
-        return gameId;
+        return startNewGames(1, null).get(0);
+    }
+
+    @Override
+    public UUID startNewGame(String fen) {
+        return startNewGames(1, fen).get(0);
+    }
+
+    // from the start position if fen is null. one wait for the disk covers all of them
+    @Override
+    public List<UUID> startNewGames(int count, String fen) {
+        List<UUID> res = new ArrayList<>(count);
+        long sequence = 0;
+
+        for (int i = 0; i < count; i++) {
+            UUID gameId = UUID.randomUUID();
+            Game game = (fen == null ? new Game(new Player("white"), new Player("black"), gameId)
+                    : new Game(new Player("white"), new Player("black"), gameId, fen));
+            games.put(game);
+            sequence = journal.gameStarted(game);
+            res.add(gameId);
+        }
+
+        journal.awaitDurable(sequence);
+        return res;
     }
 
     @Override
     public PositionDto getPosition(UUID gameId) {
-        Game game = games.get(gameId);
-        return new PositionDto(game.getFenPosition(), game.getLegalMoves());
+        Game game = findGame(gameId);
+
+        synchronized (game) {
+            return positionOf(game);
+        }
+    }
+
+    // written once per move and kept next to the game in the store, so every request for the
+    // same position gets the same bytes. a position never changes once its move is made, so
+    // the move count tags it
+    @Override
+    public SerializedPosition getSerializedPosition(UUID gameId) {
+        Game game = findGame(gameId);
+
+        synchronized (game) {
+            String etag = String.valueOf(game.getMoveCount());
+            SerializedPosition position = games.getSerializedPosition(game);
+
+            if (position == null || !position.etag().equals(etag)) {
+                position = new SerializedPosition(etag, writeJson(positionOf(game)).getBytes(StandardCharsets.UTF_8));
+                games.setSerializedPosition(game, position);
+            }
+            return position;
+        }
+    }
+
+    // the current position, then every move made until the game ends
+    @Override
+    public SseEmitter subscribe(UUID gameId) {
+        Game game = findGame(gameId);
+
+        synchronized (game) {
+            GameEventDto position = new GameEventDto(game.getMoveCount(), null, game.getFen(), game.getStatus());
+            return events.subscribe(gameId, game.getMoveCount(), writeJson(position), !game.isInProgress());
+        }
+    }
+
+    private String writeJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Couldn't write " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private PositionDto positionOf(Game game) {
+        return new PositionDto(game.getFenPosition(), game.getFen(), game.getLegalMoves(), forcedOutcome(game));
+    }
+
+    // the result with best play, once the tablebase knows it
+    private GameStatus forcedOutcome(Game game) {
+        if (!game.isInProgress() || game.getPieceCount() > tablebase.getMaxPieces()) return null;
+
+        Chessboard board = game.copyBoard();
+        TablebaseResult result = tablebase.probe(board);
+        if (result == null) return null;
+
+        Color sideToMove = board.getPosition().getSideToMove();
+        // the fifty move rule draws cursed wins
+        Color winner = switch (result.wdl()) {
+            case WIN -> sideToMove;
+            case LOSS -> (sideToMove == Color.WHITE ? Color.BLACK : Color.WHITE);
+            case CURSED_WIN, BLESSED_LOSS, DRAW -> null;
+        };
+
+        if (winner == null) return GameStatus.DRAW;
+        return winner == Color.WHITE ? GameStatus.VICTORY_WHITE : GameStatus.VICTORY_BLACK;
+    }
+
+    @Override
+    public EvaluationDto getEvaluation(UUID gameId) {
+        Game game = findGame(gameId);
+
+        synchronized (game) {
+            int material = game.getMaterial();
+            int pieceSquare = game.getPieceSquare();
+            return new EvaluationDto(material + pieceSquare, material, pieceSquare);
+        }
     }
 
     @Override
     public GameStatus makeMove(UUID gameId, Move move) {
-        return games.get(gameId).makeMove(move);
+        AppliedMove applied = applyMove(gameId, findGame(gameId), move);
+
+        // wait for the disk outside the lock, so the next move on the game can go into the same write
+        journal.awaitDurable(applied.sequence());
+        return applied.status();
+    }
+
+    // made in order, so a batch can hold a sequence of moves for one game.
+    // one wait for the disk covers every move in the batch
+    @Override
+    public List<MoveResultDto> makeMoves(List<BatchMoveDto> moves) {
+        List<MoveResultDto> res = new ArrayList<>(moves.size());
+        long sequence = 0;
+
+        for (BatchMoveDto item : moves) {
+            Game game = (item.gameId() == null ? null : lookUpGame(item.gameId()));
+            if (game == null) {
+                res.add(new MoveResultDto(item.gameId(), null, "No game with id " + item.gameId()));
+                continue;
+            }
+
+            AppliedMove applied = applyMove(item.gameId(), game, item.move() == null ? null : item.move().toMove());
+            sequence = Math.max(sequence, applied.sequence());
+            res.add(new MoveResultDto(item.gameId(), applied.status(), null));
+        }
+
+        journal.awaitDurable(sequence);
+        return res;
+    }
+
+    // sequence is 0 if the move wasn't made
+    private record AppliedMove(GameStatus status, long sequence) {}
+
+    // makes and journals the move, leaving the wait for the disk to the caller
+    private AppliedMove applyMove(UUID gameId, Game game, Move move) {
+        synchronized (game) {
+            int ply = game.getMoveCount();
+            GameStatus status = game.makeMove(move);
+            if (game.getMoveCount() == ply) return new AppliedMove(status, 0);
+
+            long sequence = journal.moveMade(gameId, ply, move.encode());
+            // pushed straight away, in move order, without waiting for the disk
+            if (events.hasSubscribers(gameId)) {
+                GameEventDto event = new GameEventDto(ply + 1, Converter.moveToUci(move), game.getFen(), status);
+                events.publish(gameId, "move", ply + 1, writeJson(event), !game.isInProgress());
+            }
+
+            return new AppliedMove(status, sequence);
+        }
+    }
+
+    // lets the journal drop everything written before the snapshot
+    @Scheduled(fixedDelayString = "${chess.journal.snapshot-interval:PT10M}")
+    public void snapshotGames() {
+        if (!journal.isEnabled()) return;
+
+        try {
+            journal.snapshot(this::gamesToSnapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't snapshot the games", e);
+        }
+    }
+
+    // the games in the store, and the saved games nobody has asked for yet as they are.
+    // the store is read first: an evicted game is put in savedGames before it leaves the store
+    private Collection<GameJournal.SavedGame> gamesToSnapshot() {
+        restoreLock.writeLock().lock();
+        try {
+            List<Game> stored = games.getGames();
+            Map<UUID, GameJournal.SavedGame> snapshot = new HashMap<>(savedGames);
+            for (Game game : stored) snapshot.put(game.getGameId(), GameJournal.SavedGame.of(game));
+
+            return snapshot.values();
+        } finally {
+            restoreLock.writeLock().unlock();
+        }
+    }
+
+    // plays from the book while it has moves, otherwise searches a copy of the board
+    // so moves can still be made while it thinks
+    @Override
+    public SearchResult findBestMove(UUID gameId, long timeMillis, int threads) {
+        Chessboard board = copyBoard(gameId);
+
+        Move bookMove = openingBook.pick(board, ThreadLocalRandom.current());
+        if (bookMove != null) return SearchResult.bookMove(bookMove);
+
+        ParallelSearch search = new ParallelSearch(board, transpositionTable, searchExecutor, tablebase);
+        return search.search(SearchLimits.ofTime(Math.min(timeMillis, maxSearchMillis)), Math.min(threads, maxSearchThreads));
+    }
+
+    @Override
+    public TranspositionTable.Stats getTranspositionTableStats() {
+        return transpositionTable.getStats();
+    }
+
+    @Override
+    public List<OpeningBook.BookMove> getBookMoves(UUID gameId) {
+        return openingBook.lookup(copyBoard(gameId));
+    }
+
+    private Chessboard copyBoard(UUID gameId) {
+        Game game = findGame(gameId);
+
+        synchronized (game) {
+            return game.copyBoard();
+        }
+    }
+
+    private Game findGame(UUID gameId) {
+        Game game = lookUpGame(gameId);
+        if (game == null) throw new GameNotFoundException(gameId);
+
+        return game;
+    }
+
+    // null if there is no such game
+    private Game lookUpGame(UUID gameId) {
+        Game game = games.get(gameId);
+        if (game == null && !savedGames.isEmpty()) game = restore(gameId);
+
+        return game;
     }
 }
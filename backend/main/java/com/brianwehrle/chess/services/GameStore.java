@@ -0,0 +1,152 @@
+package com.brianwehrle.chess.services;
+
+import com.brianwehrle.chess.dtos.SerializedPosition;
+import com.brianwehrle.chess.models.Game;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Holds the games being played, bounded two ways:
+    - games that haven't been touched for maxIdle are removed by a periodic sweep
+    - when there are more than maxGames, the least recently used are removed
+    Unfinished games that get evicted are handed to the EvictedGameHandler, if there is one,
+    before they are removed, so such a game is always in the store or with the handler.
+ */
+@Component
+public class GameStore {
+
+    private static final class Entry {
+        private final Game game;
+        private volatile long lastAccess;
+        // the position as the API last sent it, goes with the game
+        private volatile SerializedPosition serializedPosition;
+
+        private Entry(Game game, long now) {
+            this.game = game;
+            this.lastAccess = now;
+        }
+    }
+
+    public record Stats(int size, long evictedIdle, long evictedOverCapacity, long handedOff) {}
+
+    private final ConcurrentMap<UUID, Entry> games = new ConcurrentHashMap<>();
+    private final long maxIdleNanos;
+    private final int maxGames;
+    private volatile EvictedGameHandler evictedGameHandler;
+
+    private final AtomicLong evictedIdle = new AtomicLong();
+    private final AtomicLong evictedOverCapacity = new AtomicLong();
+    private final AtomicLong handedOff = new AtomicLong();
+
+    public GameStore(@Value("${chess.games.max-idle:PT30M}") Duration maxIdle,
+                     @Value("${chess.games.max-size:10000}") int maxGames,
+                     @Nullable EvictedGameHandler evictedGameHandler) {
+        if (maxGames < 1) throw new IllegalArgumentException("chess.games.max-size must be at least 1");
+
+        this.maxIdleNanos = maxIdle.toNanos();
+        this.maxGames = maxGames;
+        this.evictedGameHandler = evictedGameHandler;
+    }
+
+    // for a handler that needs the store itself, so can't be given to the constructor
+    public void setEvictedGameHandler(@Nullable EvictedGameHandler evictedGameHandler) {
+        this.evictedGameHandler = evictedGameHandler;
+    }
+
+    public void put(Game game) {
+        games.put(game.getGameId(), new Entry(game, System.nanoTime()));
+
+        if (games.size() > maxGames) evictLeastRecentlyUsed();
+    }
+
+    // null if there is no such game, or it has been evicted
+    public Game get(UUID gameId) {
+        Entry entry = games.get(gameId);
+        if (entry == null) return null;
+
+        entry.lastAccess = System.nanoTime();
+        return entry.game;
+    }
+
+    // null if none has been kept, or the game is no longer in the store
+    public SerializedPosition getSerializedPosition(Game game) {
+        Entry entry = games.get(game.getGameId());
+        return (entry != null && entry.game == game ? entry.serializedPosition : null);
+    }
+
+    public void setSerializedPosition(Game game, SerializedPosition serializedPosition) {
+        Entry entry = games.get(game.getGameId());
+        if (entry != null && entry.game == game) entry.serializedPosition = serializedPosition;
+    }
+
+    // a copy, without counting as access
+    public List<Game> getGames() {
+        List<Game> res = new ArrayList<>(games.size());
+        for (Entry entry : games.values()) res.add(entry.game);
+        return res;
+    }
+
+    public int size() {
+        return games.size();
+    }
+
+    public Stats getStats() {
+        return new Stats(games.size(), evictedIdle.get(), evictedOverCapacity.get(), handedOff.get());
+    }
+
+    @Scheduled(fixedDelayString = "${chess.games.sweep-interval:PT1M}")
+    public void evictIdleGames() {
+        long now = System.nanoTime();
+
+        for (Map.Entry<UUID, Entry> mapEntry : games.entrySet()) {
+            Entry entry = mapEntry.getValue();
+
+            if (now - entry.lastAccess >= maxIdleNanos && evict(mapEntry.getKey(), entry)) {
+                evictedIdle.incrementAndGet();
+            }
+        }
+    }
+
+    // drops back to 90% of capacity, so a full store doesn't scan on every new game
+    private void evictLeastRecentlyUsed() {
+        int excess = games.size() - maxGames * 9 / 10;
+        if (excess <= 0) return;
+
+        PriorityQueue<Entry> newestOfOldest = new PriorityQueue<>(excess, (a, b) -> Long.compare(b.lastAccess, a.lastAccess));
+        for (Entry entry : games.values()) {
+            newestOfOldest.add(entry);
+            if (newestOfOldest.size() > excess) newestOfOldest.poll();
+        }
+
+        for (Entry entry : newestOfOldest) {
+            if (evict(entry.game.getGameId(), entry)) {
+                evictedOverCapacity.incrementAndGet();
+            }
+        }
+    }
+
+    // false if the entry was already gone
+    private boolean evict(UUID gameId, Entry entry) {
+        Game game = entry.game;
+        EvictedGameHandler handler = evictedGameHandler;
+
+        // a move may still be finishing on the game, wait for it so the handler sees a consistent game
+        synchronized (game) {
+            if (games.get(gameId) != entry) return false;
+
+            boolean handOff = (handler != null && game.isInProgress());
+            if (handOff) handler.gameEvicted(game);
+            games.remove(gameId, entry);
+            if (handOff) handedOff.incrementAndGet();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,350 @@
+package com.brianwehrle.chess.utilities;
+
+import com.brianwehrle.chess.exceptions.InvalidFenException;
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.MoveGenerator;
+import com.brianwehrle.chess.models.MoveList;
+import com.brianwehrle.chess.models.RepetitionTable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/*
+    Replays every game in a directory of PGN and EPD files and reports how each one ended,
+    one line per game (or EPD position) as CSV or JSON lines.
+
+    PGN files are split into chunks at game boundaries, a blank line followed by a tag, and
+    the chunks and EPD files are shared out over a ForkJoinPool. Each worker reads its chunk
+    with its own PgnReader, so memory doesn't grow with the size of the files.
+    Reports come out in whatever order the workers finish, file and offset say where each game is.
+
+    Run from the command line:
+        java com.brianwehrle.chess.utilities.BatchAnalysis <directory> <report.csv|report.jsonl> [threads]
+ */
+public class BatchAnalysis {
+    private static final long CHUNK_SIZE = 32L << 20;
+
+    public enum Termination {
+        CHECKMATE,
+        STALEMATE,
+        REPETITION,
+        FIFTY_MOVES,
+        // ended off the board, by resignation, time or agreement, or not over yet
+        UNFINISHED,
+        INVALID
+    }
+
+    // offset is where the game starts in bytes for PGN, the line number for EPD.
+    // drawPly is the first ply at which the game was a draw by repetition or the 50 move rule, or -1
+    public record GameReport(String file, long offset, String result, int plies, Termination termination, int drawPly, String error) {}
+
+    public record Summary(long games, long errors, long plies, long millis) {
+        public long gamesPerMinute() {
+            return millis == 0 ? 0 : games * 60_000 / millis;
+        }
+    }
+
+    // sink is called from the worker threads
+    public static Summary analyze(Path directory, int threads, Consumer<GameReport> sink) throws IOException {
+        long start = System.nanoTime();
+        List<Callable<Summary>> tasks = new ArrayList<>();
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        for (Path file : files) {
+            String name = file.getFileName().toString().toLowerCase();
+            if (name.endsWith(".pgn")) {
+                for (long[] chunk : chunks(file)) {
+                    tasks.add(() -> analyzePgn(file, chunk[0], chunk[1], sink));
+                }
+            } else if (name.endsWith(".epd")) {
+                tasks.add(() -> analyzeEpd(file, sink));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long games = 0;
+        long errors = 0;
+        long plies = 0;
+        try {
+            for (Future<Summary> future : pool.invokeAll(tasks)) {
+                Summary summary = future.get();
+                games += summary.games();
+                errors += summary.errors();
+                plies += summary.plies();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) throw cause;
+            if (e.getCause() instanceof UncheckedIOException cause) throw cause.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return new Summary(games, errors, plies, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // writes the reports to a .csv or .jsonl file
+    public static Summary analyze(Path directory, int threads, Path report) throws IOException {
+        try (ReportWriter writer = new ReportWriter(report)) {
+            return analyze(directory, threads, writer);
+        }
+    }
+
+    // {start, end} of chunks of about CHUNK_SIZE, each starting at a game
+    private static List<long[]> chunks(Path file) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+
+            while (start < size) {
+                long end = (size - start <= CHUNK_SIZE ? size : nextGame(channel, start + CHUNK_SIZE));
+                chunks.add(new long[] {start, end});
+                start = end;
+            }
+        }
+
+        return chunks;
+    }
+
+    // position of the first '[' at or after from that starts a line after a blank line, or the end of the file
+    private static long nextGame(FileChannel channel, long from) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        // from is probably part way through a line, so it doesn't count as blank
+        boolean previousLineBlank = false;
+        boolean lineBlank = false;
+        long position = from;
+
+        while (channel.read(buffer, position) > 0) {
+            buffer.flip();
+            for (int i = 0; i < buffer.limit(); i++) {
+                byte c = buffer.get(i);
+
+                if (c == '\n') {
+                    previousLineBlank = lineBlank;
+                    lineBlank = true;
+                } else if (c == '[' && lineBlank && previousLineBlank) {
+                    return position + i;
+                } else if (c != ' ' && c != '\r' && c != '\t') {
+                    lineBlank = false;
+                }
+            }
+            position += buffer.limit();
+            buffer.clear();
+        }
+
+        return channel.size();
+    }
+
+    private static Summary analyzePgn(Path file, long start, long end, Consumer<GameReport> sink) throws IOException {
+        String name = file.toString();
+        Chessboard board = new Chessboard();
+        RepetitionTable positions = new RepetitionTable();
+        MoveList moves = new MoveList();
+        long games = 0;
+        long errors = 0;
+        long plies = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             PgnReader reader = new PgnReader(range(channel, start, end))) {
+            for (PgnReader.PgnGame game = reader.next(); game != null; game = reader.next()) {
+                GameReport report = replay(name, start + reader.getGameOffset(), game, board, positions, moves);
+                sink.accept(report);
+
+                games++;
+                plies += report.plies();
+                if (report.termination() == Termination.INVALID) errors++;
+            }
+        }
+
+        return new Summary(games, errors, plies, 0);
+    }
+
+    // plays the moves out again to find how the game ended
+    private static GameReport replay(String file, long offset, PgnReader.PgnGame game, Chessboard board, RepetitionTable positions, MoveList moves) {
+        int[] gameMoves = game.moves();
+        if (!game.isValid()) {
+            return new GameReport(file, offset, game.result(), gameMoves.length, Termination.INVALID, -1, game.error());
+        }
+
+        board.loadPositionFromFen(game.fen());
+        positions.clear();
+        positions.increment(board.getKey());
+
+        Termination draw = null;
+        int drawPly = -1;
+        for (int i = 0; i < gameMoves.length; i++) {
+            board.makeMove(gameMoves[i]);
+            if (draw != null) continue;
+
+            if (positions.increment(board.getKey()) >= 3) {
+                draw = Termination.REPETITION;
+                drawPly = i + 1;
+            } else if (board.getPosition().getHalfMoveClock() >= 100) {
+                draw = Termination.FIFTY_MOVES;
+                drawPly = i + 1;
+            }
+        }
+
+        return new GameReport(file, offset, game.result(), gameMoves.length, termination(board, moves, draw), drawPly, null);
+    }
+
+    private static Termination termination(Chessboard board, MoveList moves, Termination draw) {
+        MoveGenerator.generateLegalMoves(board, moves);
+
+        if (moves.isEmpty()) return board.inCheck(board.getSideToMove()) ? Termination.CHECKMATE : Termination.STALEMATE;
+        return draw != null ? draw : Termination.UNFINISHED;
+    }
+
+    // EPD lines are the first four fields of a fen, followed by operations
+    private static Summary analyzeEpd(Path file, Consumer<GameReport> sink) throws IOException {
+        String name = file.toString();
+        MoveList moves = new MoveList();
+        long games = 0;
+        long errors = 0;
+        long lineNumber = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                String[] fields = line.trim().split("\\s+", 5);
+                if (fields[0].isEmpty()) continue;
+
+                games++;
+                try {
+                    if (fields.length < 4) throw new InvalidFenException(line, "an EPD position needs four fields");
+
+                    Chessboard board = new Chessboard(String.join(" ", fields[0], fields[1], fields[2], fields[3]));
+                    sink.accept(new GameReport(name, lineNumber, "*", 0, termination(board, moves, null), -1, null));
+                } catch (InvalidFenException e) {
+                    errors++;
+                    sink.accept(new GameReport(name, lineNumber, "*", 0, Termination.INVALID, -1, e.getMessage()));
+                }
+            }
+        }
+
+        return new Summary(games, errors, 0, 0);
+    }
+
+    // reads channel from start up to end, without moving its position
+    private static ReadableByteChannel range(FileChannel channel, long start, long end) {
+        return new ReadableByteChannel() {
+            private long position = start;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (position >= end) return -1;
+
+                int limit = dst.limit();
+                dst.limit(dst.position() + (int) Math.min(dst.remaining(), end - position));
+                int read = channel.read(dst, position);
+                dst.limit(limit);
+
+                if (read > 0) position += read;
+                return read;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    private static class ReportWriter implements Consumer<GameReport>, Closeable {
+        private final Writer writer;
+        private final boolean json;
+
+        ReportWriter(Path path) throws IOException {
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            json = path.getFileName().toString().toLowerCase().endsWith(".jsonl");
+
+            if (!json) writer.write("file,offset,result,plies,termination,drawPly,error\n");
+        }
+
+        @Override
+        public synchronized void accept(GameReport report) {
+            try {
+                writer.write(json ? toJson(report) : toCsv(report));
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        private static String toCsv(GameReport report) {
+            return csv(report.file()) + "," + report.offset() + "," + csv(report.result()) + "," + report.plies() + ","
+                    + report.termination() + "," + report.drawPly() + "," + (report.error() == null ? "" : csv(report.error()));
+        }
+
+        private static String csv(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+
+        private static String toJson(GameReport report) {
+            return "{\"file\":" + json(report.file()) + ",\"offset\":" + report.offset() + ",\"result\":" + json(report.result())
+                    + ",\"plies\":" + report.plies() + ",\"termination\":\"" + report.termination() + "\",\"drawPly\":" + report.drawPly()
+                    + ",\"error\":" + (report.error() == null ? "null" : json(report.error())) + "}";
+        }
+
+        private static String json(String value) {
+            StringBuilder res = new StringBuilder(value.length() + 2).append('"');
+
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> res.append("\\\"");
+                    case '\\' -> res.append("\\\\");
+                    case '\n' -> res.append("\\n");
+                    case '\r' -> res.append("\\r");
+                    case '\t' -> res.append("\\t");
+                    default -> {
+                        if (c < 0x20) res.append(String.format("\\u%04x", (int) c));
+                        else res.append(c);
+                    }
+                }
+            }
+
+            return res.append('"').toString();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = (args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors());
+        Summary summary = analyze(Path.of(args[0]), threads, Path.of(args[1]));
+
+        System.out.printf("%,d games (%,d invalid), %,d plies in %d ms with %d threads, %,d games/min%n",
+                summary.games(), summary.errors(), summary.plies(), summary.millis(), threads, summary.gamesPerMinute());
+    }
+}
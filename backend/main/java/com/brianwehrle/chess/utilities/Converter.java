@@ -1,9 +1,13 @@
 package com.brianwehrle.chess.utilities;
 
-import com.brianwehrle.chess.models.Game;
-import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.models.*;
 import com.brianwehrle.chess.models.pieces.Piece;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 /*
     Handles various notation conversion functions, such as converting from PGN,
@@ -65,17 +69,130 @@ public class Converter {
         return piece + finalCol + finalRow;
     }
 
-    public static Move algebraicToMove(String notation) {
-        return null;
+    // long algebraic notation as used by UCI engines, e.g. e2e4 or e7e8q
+    public static String moveToUci(Move move) {
+        String res = "" + (char)(move.getStartCol() + 'a') + (move.getStartRow() + 1)
+                + (char)(move.getEndCol() + 'a') + (move.getEndRow() + 1);
+
+        switch (move.getMoveType()) {
+            case PROMOTION_QUEEN -> res += "q";
+            case PROMOTION_ROOK -> res += "r";
+            case PROMOTION_BISHOP -> res += "b";
+            case PROMOTION_KNIGHT -> res += "n";
+        }
+
+        return res;
+    }
+
+    // the legal move of the position written in standard algebraic notation, or null if there isn't one
+    public static Move algebraicToMove(Chessboard board, String notation) {
+        MoveList legalMoves = new MoveList();
+        MoveGenerator.generateLegalMoves(board, legalMoves);
+
+        byte[] san = notation.getBytes(StandardCharsets.US_ASCII);
+        int move = sanToMove(legalMoves, san, 0, san.length);
+        return move == Move.NONE ? null : Move.fromEncoded(move);
+    }
+
+    // the one move of legalMoves that san[offset, offset + length) describes,
+    // Move.NONE if there is no such move or the notation is ambiguous
+    public static int sanToMove(MoveList legalMoves, byte[] san, int offset, int length) {
+        int end = offset + length;
+
+        // check, mate and annotation marks
+        while (end > offset && (san[end - 1] == '+' || san[end - 1] == '#' || san[end - 1] == '!' || san[end - 1] == '?')) end--;
+        if (end - offset < 2) return Move.NONE;
+
+        // castling, with the letter O or zeros
+        if (san[offset] == 'O' || san[offset] == '0') {
+            int count = 0;
+            for (int i = offset; i < end; i++) {
+                if (san[i] == 'O' || san[i] == '0') count++;
+                else if (san[i] != '-') return Move.NONE;
+            }
+            if (count != 2 && count != 3) return Move.NONE;
+
+            int col = (count == 2 ? 6 : 2);
+            for (int i = 0; i < legalMoves.size(); i++) {
+                int move = legalMoves.get(i);
+                if (Move.moveTypeOf(move) == Move.MoveType.CASTLE && Bitboard.col(Move.endSquare(move)) == col) return move;
+            }
+            return Move.NONE;
+        }
+
+        int i = offset;
+        Piece.PieceType pieceType = switch (san[i]) {
+            case 'N' -> Piece.PieceType.KNIGHT;
+            case 'B' -> Piece.PieceType.BISHOP;
+            case 'R' -> Piece.PieceType.ROOK;
+            case 'Q' -> Piece.PieceType.QUEEN;
+            case 'K' -> Piece.PieceType.KING;
+            default -> Piece.PieceType.PAWN;
+        };
+        if (pieceType != Piece.PieceType.PAWN) i++;
+
+        // promotion, e8=Q or e8Q
+        Move.MoveType promotion = null;
+        if (pieceType == Piece.PieceType.PAWN) {
+            promotion = switch (san[end - 1]) {
+                case 'N' -> Move.MoveType.PROMOTION_KNIGHT;
+                case 'B' -> Move.MoveType.PROMOTION_BISHOP;
+                case 'R' -> Move.MoveType.PROMOTION_ROOK;
+                case 'Q' -> Move.MoveType.PROMOTION_QUEEN;
+                default -> null;
+            };
+            if (promotion != null) {
+                end--;
+                if (end > i && san[end - 1] == '=') end--;
+            }
+        }
+        if (end - i < 2) return Move.NONE;
+
+        int endCol = san[end - 2] - 'a';
+        int endRow = san[end - 1] - '1';
+        if (endCol < 0 || endCol > 7 || endRow < 0 || endRow > 7) return Move.NONE;
+        int endSquare = Bitboard.square(endRow, endCol);
+
+        // whatever is left is the start file and/or rank, and the capture mark
+        int startCol = -1;
+        int startRow = -1;
+        for (int j = i; j < end - 2; j++) {
+            byte c = san[j];
+            if (c >= 'a' && c <= 'h') startCol = c - 'a';
+            else if (c >= '1' && c <= '8') startRow = c - '1';
+            else if (c != 'x' && c != ':' && c != '-') return Move.NONE;
+        }
+
+        int found = Move.NONE;
+        for (int j = 0; j < legalMoves.size(); j++) {
+            int move = legalMoves.get(j);
+            Move.MoveType moveType = Move.moveTypeOf(move);
+            int start = Move.startSquare(move);
+
+            if (Move.pieceTypeOf(move) != pieceType || Move.endSquare(move) != endSquare || moveType == Move.MoveType.CASTLE) continue;
+            if ((startCol >= 0 && Bitboard.col(start) != startCol) || (startRow >= 0 && Bitboard.row(start) != startRow)) continue;
+
+            boolean promotes = moveType.ordinal() >= Move.MoveType.PROMOTION_KNIGHT.ordinal();
+            if (promotes ? moveType != promotion : promotion != null) continue;
+
+            if (found != Move.NONE) return Move.NONE;
+            found = move;
+        }
+
+        return found;
     }
 
     public String gameToFen(Game game) {
         return game.getFen();
     }
 
-    public static ArrayList<Move> pgnToMoveList() {
-        ArrayList<Move> moves = new ArrayList<>();
-
-        return moves;
+    // moves of the first game in the pgn, empty if there isn't one that can be read
+    public static ArrayList<Move> pgnToMoveList(String pgn) {
+        try (PgnReader reader = new PgnReader(Channels.newChannel(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8))))) {
+            PgnReader.PgnGame game = reader.next();
+            return game == null || !game.isValid() ? new ArrayList<>() : game.toMoves();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -0,0 +1,178 @@
+package com.brianwehrle.chess.utilities;
+
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.models.MoveGenerator;
+import com.brianwehrle.chess.models.MoveList;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    Counts the leaf nodes of the move tree to a fixed depth. The counts for the
+    reference positions are well known, so any difference means the move generator
+    or make/unmake is wrong, and the time taken is a measure of their speed.
+
+    Run from the command line with the compiled classes on the classpath:
+        java com.brianwehrle.chess.utilities.Perft                  all reference positions
+        java com.brianwehrle.chess.utilities.Perft <depth> [fen]    one position (start position by default)
+        java com.brianwehrle.chess.utilities.Perft divide <depth> [fen]
+ */
+public class Perft {
+
+    public static final String START_POSITION = Chessboard.START_FEN;
+
+    // expectedNodes[i] is the node count at depth i + 1
+    public record ReferencePosition(String name, String fen, long... expectedNodes) {
+        public int maxDepth() {
+            return expectedNodes.length;
+        }
+    }
+
+    // from https://www.chessprogramming.org/Perft_Results
+    public static final List<ReferencePosition> REFERENCE_POSITIONS = List.of(
+            new ReferencePosition("start", START_POSITION,
+                    20, 400, 8902, 197281, 4865609),
+            new ReferencePosition("kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                    48, 2039, 97862, 4085603),
+            new ReferencePosition("position3", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                    14, 191, 2812, 43238, 674624, 11030083),
+            new ReferencePosition("position4", "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                    6, 264, 9467, 422333, 15833292),
+            new ReferencePosition("position5", "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                    44, 1486, 62379, 2103487),
+            new ReferencePosition("position6", "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+                    46, 2079, 89890, 3894594)
+    );
+
+    public static long perft(Chessboard board, int depth) {
+        return perft(board, depth, newMoveLists(depth));
+    }
+
+    // one move list per ply, reused for every node at that ply
+    private static long perft(Chessboard board, int depth, MoveList[] moveLists) {
+        if (depth == 0) return 1;
+
+        MoveList moves = moveLists[depth];
+        MoveGenerator.generateLegalMoves(board, moves);
+        if (depth == 1) return moves.size();
+
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            board.makeMove(move);
+            nodes += perft(board, depth - 1, moveLists);
+            board.unmakeMove(move);
+        }
+
+        return nodes;
+    }
+
+    private static MoveList[] newMoveLists(int depth) {
+        MoveList[] moveLists = new MoveList[depth + 1];
+
+        for (int i = 0; i <= depth; i++) {
+            moveLists[i] = new MoveList();
+        }
+
+        return moveLists;
+    }
+
+    // node count below each root move, keyed by the move in UCI notation
+    public static Map<String, Long> divide(Chessboard board, int depth) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        MoveList moves = new MoveList();
+        MoveList[] moveLists = newMoveLists(depth);
+
+        MoveGenerator.generateLegalMoves(board, moves);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            board.makeMove(move);
+            counts.put(Converter.moveToUci(Move.fromEncoded(move)), perft(board, depth - 1, moveLists));
+            board.unmakeMove(move);
+        }
+
+        return counts;
+    }
+
+    public static Chessboard boardFromFen(String fen) {
+        Chessboard board = new Chessboard();
+        board.loadPositionFromFen(fen);
+        return board;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            runReferencePositions();
+        } else if (args[0].equals("divide")) {
+            runDivide(Integer.parseInt(args[1]), fenArgument(args, 2));
+        } else {
+            int depth = Integer.parseInt(args[0]);
+            report(fenArgument(args, 1), depth);
+        }
+    }
+
+    private static String fenArgument(String[] args, int from) {
+        if (args.length <= from) return START_POSITION;
+
+        return String.join(" ", List.of(args).subList(from, args.length));
+    }
+
+    private static void runReferencePositions() {
+        boolean allPassed = true;
+        long totalNodes = 0;
+        long totalNanos = 0;
+
+        for (ReferencePosition reference : REFERENCE_POSITIONS) {
+            int depth = reference.maxDepth();
+            Chessboard board = boardFromFen(reference.fen());
+
+            long start = System.nanoTime();
+            long nodes = perft(board, depth);
+            long nanos = System.nanoTime() - start;
+
+            long expected = reference.expectedNodes()[depth - 1];
+            boolean passed = nodes == expected;
+            allPassed &= passed;
+            totalNodes += nodes;
+            totalNanos += nanos;
+
+            System.out.printf("%-10s depth %d: %,d nodes (expected %,d) %s in %d ms, %,d nodes/s%n",
+                    reference.name(), depth, nodes, expected, passed ? "OK" : "FAILED",
+                    nanos / 1_000_000, nodesPerSecond(nodes, nanos));
+        }
+
+        System.out.printf("total: %,d nodes in %d ms, %,d nodes/s%n",
+                totalNodes, totalNanos / 1_000_000, nodesPerSecond(totalNodes, totalNanos));
+
+        if (!allPassed) System.exit(1);
+    }
+
+    private static void report(String fen, int depth) {
+        Chessboard board = boardFromFen(fen);
+
+        long start = System.nanoTime();
+        long nodes = perft(board, depth);
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("depth %d: %,d nodes in %d ms, %,d nodes/s%n",
+                depth, nodes, nanos / 1_000_000, nodesPerSecond(nodes, nanos));
+    }
+
+    private static void runDivide(int depth, String fen) {
+        long total = 0;
+
+        for (Map.Entry<String, Long> entry : divide(boardFromFen(fen), depth).entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+            total += entry.getValue();
+        }
+
+        System.out.println();
+        System.out.println("Nodes searched: " + total);
+    }
+
+    private static long nodesPerSecond(long nodes, long nanos) {
+        return nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+    }
+}
@@ -0,0 +1,297 @@
+package com.brianwehrle.chess.utilities;
+
+import com.brianwehrle.chess.exceptions.InvalidFenException;
+import com.brianwehrle.chess.models.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/*
+    Reads games one at a time from PGN, so an archive of any size is read in constant memory.
+    Input goes through one fixed buffer, and each move is resolved against the legal moves
+    of the position as it is read, on a board reused for every game.
+
+    Comments, variations, NAGs and escape lines are skipped. A game with a move that can't
+    be resolved, or a FEN tag that can't be loaded, still comes back, with the moves up to
+    the problem and an error saying what it was.
+
+    Run from the command line to time reading an archive:
+        java com.brianwehrle.chess.utilities.PgnReader <file.pgn>
+ */
+public class PgnReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_TOKEN = 256;
+
+    // moves are encoded, the same as the engine's. error is null if every move could be played
+    public record PgnGame(Map<String, String> tags, int[] moves, String result, String error) {
+        public boolean isValid() {
+            return error == null;
+        }
+
+        public String fen() {
+            return tags.getOrDefault("FEN", Chessboard.START_FEN);
+        }
+
+        public ArrayList<Move> toMoves() {
+            ArrayList<Move> res = new ArrayList<>(moves.length);
+            for (int move : moves) res.add(Move.fromEncoded(move));
+            return res;
+        }
+
+        // plays the game out from its starting position
+        public Game toGame() {
+            Game game = new Game(new Player(tags.getOrDefault("White", "white")), new Player(tags.getOrDefault("Black", "black")),
+                    UUID.randomUUID(), fen());
+            for (int move : moves) game.makeMove(Move.fromEncoded(move));
+            return game;
+        }
+    }
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private boolean endOfInput;
+    // bytes read before the ones in the buffer
+    private long bufferOffset;
+    private long gameOffset;
+
+    private final byte[] token = new byte[MAX_TOKEN];
+    // tag values can be any length
+    private byte[] text = new byte[MAX_TOKEN];
+
+    private final Chessboard board = new Chessboard();
+    private final MoveList legalMoves = new MoveList();
+    private int[] moves = new int[256];
+
+    private long gamesRead;
+    private long gamesWithErrors;
+
+    public PgnReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.flip();
+    }
+
+    public static PgnReader open(Path path) throws IOException {
+        return new PgnReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    // the next game, or null at the end of the input
+    public PgnGame next() throws IOException {
+        int c = skipWhitespace();
+        if (c == -1) return null;
+        gameOffset = bufferOffset + buffer.position();
+
+        Map<String, String> tags = new LinkedHashMap<>();
+        while (c == '[') {
+            readTag(tags);
+            c = skipWhitespace();
+        }
+
+        PgnGame game = readMoves(tags);
+        gamesRead++;
+        if (!game.isValid()) gamesWithErrors++;
+        return game;
+    }
+
+    public long getGamesRead() {
+        return gamesRead;
+    }
+
+    public long getGamesWithErrors() {
+        return gamesWithErrors;
+    }
+
+    // where the last game returned by next starts, in bytes from the start of the input
+    public long getGameOffset() {
+        return gameOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // the movetext up to the result, or up to the next game's tags if the result is missing
+    private PgnGame readMoves(Map<String, String> tags) throws IOException {
+        String error = null;
+        try {
+            board.loadPositionFromFen(tags.getOrDefault("FEN", Chessboard.START_FEN));
+        } catch (InvalidFenException e) {
+            error = e.getMessage();
+        }
+
+        int count = 0;
+        String result = "*";
+        movetext:
+        for (int c = skipWhitespace(); c != -1 && c != '['; c = skipWhitespace()) {
+            switch (c) {
+                case '{' -> skipPast('}');
+                case ';', '%' -> skipPast('\n');
+                case '(' -> skipVariation();
+                case ')', '}' -> read();
+                default -> {
+                    int length = readToken();
+                    if (isResult(length)) {
+                        result = new String(token, 0, length, StandardCharsets.US_ASCII);
+                        break movetext;
+                    }
+
+                    // move numbers, "12." or "12...", may run straight into the move
+                    int start = 0;
+                    while (start < length && token[start] >= '0' && token[start] <= '9') start++;
+                    // digits not followed by a dot are castling written with zeros
+                    if (start < length && token[start] != '.') start = 0;
+                    while (start < length && token[start] == '.') start++;
+                    if (start == length || error != null || token[start] == '$' || token[start] == '!' || token[start] == '?') continue;
+
+                    MoveGenerator.generateLegalMoves(board, legalMoves);
+                    int move = Converter.sanToMove(legalMoves, token, start, length - start);
+                    if (move == Move.NONE) {
+                        error = "illegal or ambiguous move " + new String(token, start, length - start, StandardCharsets.US_ASCII)
+                                + " at ply " + (count + 1);
+                        continue;
+                    }
+
+                    board.makeMove(move);
+                    if (count == moves.length) moves = Arrays.copyOf(moves, count * 2);
+                    moves[count++] = move;
+                }
+            }
+        }
+
+        return new PgnGame(tags, Arrays.copyOf(moves, count), result, error);
+    }
+
+    // exactly, "0-0" is castling
+    private boolean isResult(int length) {
+        return tokenEquals("1-0", length) || tokenEquals("0-1", length) || tokenEquals("1/2-1/2", length) || tokenEquals("*", length);
+    }
+
+    private boolean tokenEquals(String text, int length) {
+        if (length != text.length()) return false;
+
+        for (int i = 0; i < length; i++) {
+            if (token[i] != text.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // [Name "value"], the value may contain \" and \\
+    private void readTag(Map<String, String> tags) throws IOException {
+        read();
+        int nameLength = 0;
+        for (int c = peek(); c != -1 && c != '"' && c != ']' && !isWhitespace(c); c = peek()) {
+            if (nameLength < MAX_TOKEN) token[nameLength++] = (byte) read();
+            else read();
+        }
+
+        int c = skipWhitespace();
+        int valueLength = 0;
+        if (c == '"') {
+            read();
+            for (c = read(); c != -1 && c != '"'; c = read()) {
+                if (c == '\\') c = read();
+                if (c == -1) break;
+                if (valueLength == text.length) text = Arrays.copyOf(text, valueLength * 2);
+                text[valueLength++] = (byte) c;
+            }
+        }
+        skipPast(']');
+
+        tags.put(new String(token, 0, nameLength, StandardCharsets.US_ASCII), new String(text, 0, valueLength, StandardCharsets.UTF_8));
+    }
+
+    // up to whitespace or the start of a comment, variation or tag
+    private int readToken() throws IOException {
+        int length = 0;
+
+        for (int c = peek(); c != -1 && !isWhitespace(c) && c != '{' && c != '}' && c != '(' && c != ')' && c != ';' && c != '['; c = peek()) {
+            read();
+            if (length < MAX_TOKEN) token[length++] = (byte) c;
+        }
+
+        return length;
+    }
+
+    // variations can nest, and contain comments with brackets of their own
+    private void skipVariation() throws IOException {
+        read();
+        int depth = 1;
+
+        while (depth > 0) {
+            int c = read();
+            switch (c) {
+                case -1 -> depth = 0;
+                case '(' -> depth++;
+                case ')' -> depth--;
+                case '{' -> skipPast('}');
+                case ';' -> skipPast('\n');
+                default -> {}
+            }
+        }
+    }
+
+    private void skipPast(int end) throws IOException {
+        for (int c = read(); c != -1 && c != end; c = read()) {}
+    }
+
+    // the next character that isn't whitespace, without reading it
+    private int skipWhitespace() throws IOException {
+        int c = peek();
+        while (c != -1 && isWhitespace(c)) {
+            read();
+            c = peek();
+        }
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    private int peek() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) return -1;
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    private int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfInput) return false;
+
+        bufferOffset += buffer.limit();
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+
+        if (read < 0) endOfInput = true;
+        return read > 0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long start = System.nanoTime();
+        long moves = 0;
+
+        try (PgnReader reader = open(Path.of(args[0]))) {
+            for (PgnGame game = reader.next(); game != null; game = reader.next()) {
+                moves += game.moves().length;
+            }
+
+            long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            System.out.printf("%,d games (%,d with errors), %,d moves in %d ms, %,d games/min%n",
+                    reader.getGamesRead(), reader.getGamesWithErrors(), moves, millis, reader.getGamesRead() * 60_000 / millis);
+        }
+    }
+}
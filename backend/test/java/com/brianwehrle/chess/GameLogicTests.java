@@ -1,15 +1,22 @@
 package com.brianwehrle.chess;
 
+import com.brianwehrle.chess.exceptions.InvalidFenException;
 import com.brianwehrle.chess.models.Chessboard;
 import com.brianwehrle.chess.models.Move;
 import com.brianwehrle.chess.models.Color;
 import com.brianwehrle.chess.models.Game;
+import com.brianwehrle.chess.models.MoveGenerator;
+import com.brianwehrle.chess.models.Player;
 import com.brianwehrle.chess.models.pieces.Bishop;
 import com.brianwehrle.chess.models.pieces.Pawn;
+import com.brianwehrle.chess.utilities.Converter;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 //@SpringBootTest
 class GameLogicTests {
@@ -27,7 +34,121 @@ class GameLogicTests {
         ArrayList<Move> receivedMoves = game.getLegalMoves();
 
         // then
+        // c3 blocks, or the king steps to d1, e2, f1 or f2
         System.out.println(receivedMoves);
-        assert(receivedMoves.size() == 0);
+        assert(receivedMoves.size() == 5);
+        assert(receivedMoves.stream().anyMatch(move -> move.toString().equals("c3")));
+    }
+
+    @Test
+    void testPieceBlockingCheck() {
+        // given
+        String fen = "rnbqk1nr/pppp1ppp/8/4p3/1b2P3/3P4/PPP2PPP/RNBQKBNR w KQkq - 1 3";
+        testBoard.loadPositionFromFen(fen);
+        game = new Game(testBoard, Game.GameStatus.WHITE_TO_MOVE);
+
+        // when
+        ArrayList<Move> receivedMoves = game.getLegalMoves();
+
+        // then
+        // c3, Nc3, Nd2, Bd2, Qd2 block, or Ke2
+        System.out.println(receivedMoves);
+        assert(receivedMoves.size() == 6);
+    }
+
+    @Test
+    void testThreefoldRepetition() {
+        // given
+        game = new Game(new Player("white"), new Player("black"), UUID.randomUUID());
+        String[] knightShuffle = {"g1f3", "g8f6", "f3g1", "f6g8", "g1f3", "g8f6", "f3g1"};
+
+        // when
+        for (String move : knightShuffle) {
+            Game.GameStatus status = game.makeMove(findMove(move));
+            assert(status != Game.GameStatus.DRAW);
+        }
+        Game.GameStatus status = game.makeMove(findMove("f6g8"));
+
+        // then
+        // third time the starting position comes up
+        assert(status == Game.GameStatus.DRAW);
+    }
+
+    @Test
+    void testGameFromFen() {
+        // given
+        String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R b Kq - 3 12";
+
+        // when
+        game = new Game(new Player("white"), new Player("black"), UUID.randomUUID(), fen);
+
+        // then
+        assertEquals(fen, game.getFen());
+        assertEquals(Game.GameStatus.BLACK_TO_MOVE, game.getStatus());
+        // only the long castle is left for black
+        assertNotNull(findMove("e8c8"));
+        assertNull(findMove("e8g8"));
+    }
+
+    @Test
+    void testGameFromFenAlreadyOver() {
+        // fool's mate
+        game = new Game(new Player("white"), new Player("black"), UUID.randomUUID(),
+                "rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3");
+
+        assertEquals(Game.GameStatus.VICTORY_BLACK, game.getStatus());
+    }
+
+    @Test
+    void testEnPassantFromFen() {
+        // e3 is only kept when a black pawn can take on it
+        Chessboard board = new Chessboard("4k3/8/8/8/3pP3/8/8/4K3 b - e3 0 1");
+        assertEquals(20, board.getPosition().getEnPassantSquare());
+        board = new Chessboard("4k3/8/8/8/4P3/8/8/4K3 b - e3 0 1");
+        assertEquals(-1, board.getPosition().getEnPassantSquare());
+    }
+
+    @Test
+    void testLargeHalfMoveClock() {
+        // the clock survives a move being made and taken back
+        Chessboard board = new Chessboard("4k3/8/8/8/8/8/8/R3K3 w - - 65535 200");
+        Move move = MoveGenerator.generateLegalMoves(board).get(0);
+        board.makeMove(move);
+        board.unmakeMove(move);
+        assertEquals(65535, board.getPosition().getHalfMoveClock());
+    }
+
+    @Test
+    void testInvalidFen() {
+        String[] invalid = {
+                "",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbqkbnr/ppppxppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbq1bnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQ - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR x KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQxq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e4 0 1",
+                // no pawn just moved past e6, the square is taken, the pawn behind it is white's own
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e6 0 1",
+                "4k3/8/4n3/3Pp3/8/8/8/4K3 w - e6 0 1",
+                "4k3/8/8/3PP3/8/8/8/4K3 w - e6 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - zero 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 65536 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 extra",
+                // black is in check with white to move
+                "7k/8/8/8/8/8/8/4K2R w - - 0 1",
+        };
+
+        for (String fen : invalid) {
+            assertThrows(InvalidFenException.class, () -> new Chessboard(fen), fen);
+        }
+    }
+
+    private Move findMove(String uci) {
+        return game.getLegalMoves().stream()
+                .filter(move -> Converter.moveToUci(move).equals(uci))
+                .findFirst()
+                .orElse(null);
     }
 }
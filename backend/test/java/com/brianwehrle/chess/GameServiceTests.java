@@ -0,0 +1,499 @@
+package com.brianwehrle.chess;
+
+import com.brianwehrle.chess.controllers.GameController;
+import com.brianwehrle.chess.dtos.MoveResultDto;
+import com.brianwehrle.chess.dtos.PositionDto;
+import com.brianwehrle.chess.dtos.SerializedPosition;
+import com.brianwehrle.chess.engine.EndgameTablebase;
+import com.brianwehrle.chess.engine.OpeningBook;
+import com.brianwehrle.chess.engine.TranspositionTable;
+import com.brianwehrle.chess.exceptions.GameNotFoundException;
+import com.brianwehrle.chess.models.Game;
+import com.brianwehrle.chess.models.Game.GameStatus;
+import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.models.Player;
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+import com.brianwehrle.chess.services.GameEvents;
+import com.brianwehrle.chess.services.GameJournal;
+import com.brianwehrle.chess.services.GameServiceImpl;
+import com.brianwehrle.chess.services.GameStore;
+import com.brianwehrle.chess.utilities.Perft;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class GameServiceTests {
+
+    @TempDir
+    Path dir;
+
+    private static GameServiceImpl newGameService() {
+        return newGameService(GameJournal.disabled());
+    }
+
+    private static GameServiceImpl newGameService(GameJournal journal) {
+        return newGameService(new GameStore(Duration.ofMinutes(30), 100, null), journal);
+    }
+
+    private static GameServiceImpl newGameService(GameStore store, GameJournal journal) {
+        return new GameServiceImpl(store,
+                new TranspositionTable(1), OpeningBook.empty(), EndgameTablebase.getInstance(), Executors.newSingleThreadExecutor(), journal, new ObjectMapper(),
+                new GameEvents(1, 64, Duration.ofMinutes(1)), 1000, 2);
+    }
+
+    private static MockMvc mockMvc(GameServiceImpl gameService) {
+        GameController controller = new GameController();
+        ReflectionTestUtils.setField(controller, "gameService", gameService);
+        ReflectionTestUtils.setField(controller, "maxBatchSize", 10);
+        return MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    private static Move move(int start, int end) {
+        return new Move(PieceType.PAWN, Move.MoveType.STANDARD, start, end);
+    }
+
+    @Test
+    void testSameMoveRacedOnOneGameIsPlayedOnce() throws Exception {
+        GameServiceImpl gameService = newGameService();
+        UUID gameId = gameService.startNewGame();
+        Move e4 = new Move(PieceType.PAWN, Move.MoveType.STANDARD, 12, 28);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<GameStatus>> results = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return gameService.makeMove(gameId, e4);
+            }));
+        }
+        start.countDown();
+
+        int played = 0;
+        for (Future<GameStatus> result : results) {
+            if (result.get(10, TimeUnit.SECONDS) == GameStatus.BLACK_TO_MOVE) played++;
+        }
+        executor.shutdown();
+
+        // after the first e4 it is black's move, so every other attempt is invalid
+        assertEquals(1, played);
+        assertTrue(gameService.getPosition(gameId).fenPosition().startsWith("rnbqkbnr/pppppppp/8/8/4P3/"));
+    }
+
+    @Test
+    void testSerializedPositionIsWrittenOncePerMove() throws IOException {
+        GameServiceImpl gameService = newGameService();
+        UUID gameId = gameService.startNewGame();
+
+        SerializedPosition start = gameService.getSerializedPosition(gameId);
+        assertSame(start.json(), gameService.getSerializedPosition(gameId).json());
+        assertEquals("0", start.etag());
+
+        PositionDto expected = gameService.getPosition(gameId);
+        JsonNode json = new ObjectMapper().readTree(start.json());
+        assertEquals(expected.fen(), json.get("fen").asText());
+        assertEquals(expected.legalMoves().size(), json.get("legalMoves").size());
+
+        gameService.makeMove(gameId, move(12, 28));
+        SerializedPosition afterMove = gameService.getSerializedPosition(gameId);
+        assertEquals("1", afterMove.etag());
+        assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1", new ObjectMapper().readTree(afterMove.json()).get("fen").asText());
+    }
+
+    @Test
+    void testUnchangedPositionIsNotSentAgain() throws Exception {
+        GameServiceImpl gameService = newGameService();
+        UUID gameId = gameService.startNewGame();
+        MockMvc mvc = mockMvc(gameService);
+
+        mvc.perform(get("/api/v1/{gameId}/getPosition", gameId))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"0\""));
+        mvc.perform(get("/api/v1/{gameId}/getPosition", gameId).header("If-None-Match", "\"0\""))
+                .andExpect(status().isNotModified());
+
+        gameService.makeMove(gameId, move(12, 28));
+        mvc.perform(get("/api/v1/{gameId}/getPosition", gameId).header("If-None-Match", "\"0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""));
+    }
+
+    @Test
+    void testMovesArePushedToSubscribers() throws Exception {
+        GameServiceImpl gameService = newGameService();
+        UUID gameId = gameService.startNewGame("k7/8/1K6/8/8/8/7Q/8 w - - 0 1");
+
+        MvcResult result = mockMvc(gameService).perform(get("/api/v1/{gameId}/events", gameId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        gameService.makeMove(gameId, new Move(PieceType.QUEEN, Move.MoveType.STANDARD, 15, 63));
+
+        // mate, so the stream is closed after the move
+        result.getAsyncResult(5000);
+        String events = result.getResponse().getContentAsString();
+        assertTrue(events.contains("event:position\nid:0\ndata:{\"ply\":0,\"move\":null"), events);
+        assertTrue(events.contains("event:move\nid:1\ndata:{\"ply\":1,\"move\":\"h2h8\""), events);
+        assertTrue(events.contains("\"status\":\"VICTORY_WHITE\""), events);
+    }
+
+    @Test
+    void testSubscribersOfOneGameGetTheSameEvents() throws Exception {
+        GameServiceImpl gameService = newGameService();
+        UUID gameId = gameService.startNewGame("k7/8/1K6/8/8/8/7Q/8 w - - 0 1");
+        MockMvc mvc = mockMvc(gameService);
+
+        List<MvcResult> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(mvc.perform(get("/api/v1/{gameId}/events", gameId))
+                    .andExpect(request().asyncStarted())
+                    .andReturn());
+        }
+        gameService.makeMove(gameId, new Move(PieceType.QUEEN, Move.MoveType.STANDARD, 15, 63));
+
+        List<String> streams = new ArrayList<>();
+        for (MvcResult result : results) {
+            result.getAsyncResult(5000);
+            streams.add(result.getResponse().getContentAsString());
+        }
+
+        // the move event is built once for all of them, and ends in exactly one blank line
+        String events = streams.get(0);
+        int move = events.indexOf("event:move\nid:1\ndata:");
+        assertTrue(move > 0, events);
+        assertEquals(events.length() - 2, events.indexOf("\n\n", move), events);
+        for (String stream : streams) assertEquals(events, stream);
+    }
+
+    @Test
+    void testSubscribingToAFinishedGameEndsTheStream() throws Exception {
+        GameServiceImpl gameService = newGameService();
+        UUID gameId = gameService.startNewGame("k7/8/1K6/8/8/8/7Q/8 w - - 0 1");
+        gameService.makeMove(gameId, new Move(PieceType.QUEEN, Move.MoveType.STANDARD, 15, 63));
+
+        MvcResult result = mockMvc(gameService).perform(get("/api/v1/{gameId}/events", gameId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        result.getAsyncResult(5000);
+        String events = result.getResponse().getContentAsString();
+        assertTrue(events.startsWith("event:position\nid:1\ndata:{\"ply\":1,\"move\":null"), events);
+        assertTrue(events.contains("\"status\":\"VICTORY_WHITE\""), events);
+    }
+
+    @Test
+    void testBatchEndpoints() throws Exception {
+        GameServiceImpl gameService = newGameService();
+        MockMvc mvc = mockMvc(gameService);
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        String created = mvc.perform(post("/api/v1/newGames").param("count", "2"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        UUID[] gameIds = objectMapper.readValue(created, UUID[].class);
+        assertEquals(2, gameIds.length);
+
+        mvc.perform(post("/api/v1/newGames").param("count", "11")).andExpect(status().isBadRequest());
+
+        String e4 = "{\"startRow\":1,\"startCol\":4,\"endRow\":3,\"endCol\":4,\"moveType\":\"STANDARD\",\"pieceType\":\"PAWN\"}";
+        String e5 = "{\"startRow\":6,\"startCol\":4,\"endRow\":4,\"endCol\":4,\"moveType\":\"STANDARD\",\"pieceType\":\"PAWN\"}";
+        UUID unknown = UUID.randomUUID();
+        String batch = "[" + String.join(",",
+                "{\"gameId\":\"" + gameIds[0] + "\",\"move\":" + e4 + "}",
+                "{\"gameId\":\"" + gameIds[0] + "\",\"move\":" + e5 + "}",
+                "{\"gameId\":\"" + gameIds[1] + "\",\"move\":" + e5 + "}",
+                "{\"gameId\":\"" + unknown + "\",\"move\":" + e4 + "}") + "]";
+
+        String results = mvc.perform(post("/api/v1/makeMoves").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        MoveResultDto[] moveResults = objectMapper.readValue(results, MoveResultDto[].class);
+
+        assertEquals(GameStatus.BLACK_TO_MOVE, moveResults[0].status());
+        assertEquals(GameStatus.WHITE_TO_MOVE, moveResults[1].status());
+        // white moves first
+        assertEquals(GameStatus.INVALID_MOVE, moveResults[2].status());
+        assertNull(moveResults[3].status());
+        assertEquals(unknown, moveResults[3].gameId());
+        assertNotNull(moveResults[3].error());
+
+        assertEquals("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2", gameService.getPosition(gameIds[0]).fen());
+    }
+
+    @Test
+    void testUnknownGame() {
+        GameServiceImpl gameService = newGameService();
+
+        assertThrows(GameNotFoundException.class, () -> gameService.getPosition(UUID.randomUUID()));
+    }
+
+    @Test
+    void testIdleGamesAreEvictedAndHandedOff() {
+        List<Game> handedOff = new ArrayList<>();
+        GameStore store = new GameStore(Duration.ZERO, 100, handedOff::add);
+        Game game = new Game(new Player("white"), new Player("black"), UUID.randomUUID());
+        store.put(game);
+
+        store.evictIdleGames();
+
+        assertNull(store.get(game.getGameId()));
+        assertEquals(List.of(game), handedOff);
+        assertEquals(new GameStore.Stats(0, 1, 0, 1), store.getStats());
+    }
+
+    @Test
+    void testLeastRecentlyUsedGamesAreEvictedOverCapacity() {
+        GameStore store = new GameStore(Duration.ofMinutes(30), 10, null);
+        List<Game> games = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            Game game = new Game(new Player("white"), new Player("black"), UUID.randomUUID());
+            games.add(game);
+            store.put(game);
+        }
+        // touch the first game so the second is now the oldest
+        store.get(games.get(0).getGameId());
+        store.put(new Game(new Player("white"), new Player("black"), UUID.randomUUID()));
+
+        // back down to 90% of capacity
+        assertEquals(9, store.size());
+        assertNotNull(store.get(games.get(0).getGameId()));
+        assertNull(store.get(games.get(1).getGameId()));
+        assertNull(store.get(games.get(2).getGameId()));
+        assertEquals(2, store.getStats().evictedOverCapacity());
+    }
+
+    @Test
+    void testGamesAreRecoveredFromTheJournal() throws IOException {
+        UUID first;
+        UUID second;
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            GameServiceImpl gameService = newGameService(journal);
+            first = gameService.startNewGame();
+            gameService.makeMove(first, move(12, 28));
+
+            // the first move is in the snapshot, the rest in the segment after it
+            gameService.snapshotGames();
+            gameService.makeMove(first, move(52, 36));
+            second = gameService.startNewGame("4k3/8/8/8/8/8/4P3/4K3 w - - 0 1");
+            gameService.makeMove(second, move(12, 20));
+            // illegal moves aren't journaled
+            gameService.makeMove(second, move(12, 20));
+        }
+
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            GameServiceImpl gameService = newGameService(journal);
+
+            assertEquals("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2", gameService.getPosition(first).fen());
+            assertEquals("4k3/8/8/8/8/4P3/8/4K3 b - - 0 1", gameService.getPosition(second).fen());
+
+            // and again, after moves from both runs
+            gameService.makeMove(second, new Move(PieceType.KING, Move.MoveType.STANDARD, 60, 52));
+        }
+
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            GameServiceImpl gameService = newGameService(journal);
+
+            assertEquals("8/4k3/8/8/8/4P3/8/4K3 w - - 1 2", gameService.getPosition(second).fen());
+        }
+    }
+
+    @Test
+    void testGameStartedDuringSnapshotIsKept() throws IOException {
+        AtomicReference<GameServiceImpl> service = new AtomicReference<>();
+        AtomicReference<UUID> startedDuring = new AtomicReference<>();
+        // starts a game after the store has been copied, before the snapshot is written
+        GameStore store = new GameStore(Duration.ofMinutes(30), 100, null) {
+            @Override
+            public List<Game> getGames() {
+                List<Game> games = super.getGames();
+                if (startedDuring.get() == null) startedDuring.set(service.get().startNewGame());
+                return games;
+            }
+        };
+
+        UUID before;
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            service.set(newGameService(store, journal));
+            before = service.get().startNewGame();
+            service.get().snapshotGames();
+        }
+
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            GameServiceImpl gameService = newGameService(journal);
+
+            assertEquals(Perft.START_POSITION, gameService.getPosition(before).fen());
+            assertEquals(Perft.START_POSITION, gameService.getPosition(startedDuring.get()).fen());
+        }
+    }
+
+    @Test
+    void testMovesAreRecoveredAcrossSnapshotAndSegments() throws IOException {
+        Game game = new Game(new Player("white"), new Player("black"), UUID.randomUUID());
+        int[] moves = {move(12, 28).encode(), move(52, 36).encode(), move(6, 21).encode(), move(57, 42).encode()};
+
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            journal.gameStarted(game);
+            journal.moveMade(game.getGameId(), 0, moves[0]);
+
+            // the second move is both in the snapshot and the segment after it
+            journal.snapshot(() -> {
+                journal.moveMade(game.getGameId(), 1, moves[1]);
+                return List.of(new GameJournal.SavedGame(game.getGameId(), game.getStartFen(), Arrays.copyOf(moves, 2)));
+            });
+            journal.awaitDurable(journal.moveMade(game.getGameId(), 2, moves[2]));
+        }
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            journal.awaitDurable(journal.moveMade(game.getGameId(), 3, moves[3]));
+        }
+
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            List<GameJournal.SavedGame> saved = journal.recover();
+
+            assertEquals(1, saved.size());
+            assertArrayEquals(moves, saved.get(0).moves());
+        }
+    }
+
+    @Test
+    void testEvictedGamesAreKeptInTheJournal() throws IOException {
+        GameStore store = new GameStore(Duration.ZERO, 100, null);
+        UUID gameId;
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            GameServiceImpl gameService = newGameService(store, journal);
+            gameId = gameService.startNewGame();
+            gameService.makeMove(gameId, move(12, 28));
+
+            // comes back when asked for
+            store.evictIdleGames();
+            assertNull(store.get(gameId));
+            gameService.makeMove(gameId, move(52, 36));
+
+            // and is in the snapshot while it is out of the store
+            store.evictIdleGames();
+            gameService.snapshotGames();
+        }
+
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            GameServiceImpl gameService = newGameService(journal);
+
+            assertEquals("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2", gameService.getPosition(gameId).fen());
+        }
+    }
+
+    @Test
+    void testRecoveredGamesSurviveASnapshotWithoutBeingRestored() throws IOException {
+        List<UUID> gameIds = new ArrayList<>();
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            GameServiceImpl gameService = newGameService(journal);
+            for (int i = 0; i < 5; i++) {
+                UUID gameId = gameService.startNewGame();
+                gameService.makeMove(gameId, move(12, 28));
+                gameIds.add(gameId);
+            }
+        }
+
+        // more games than the store holds, and none of them asked for
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            newGameService(new GameStore(Duration.ofMinutes(30), 2, null), journal).snapshotGames();
+        }
+
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            GameServiceImpl gameService = newGameService(journal);
+
+            for (UUID gameId : gameIds) {
+                assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1", gameService.getPosition(gameId).fen());
+            }
+        }
+    }
+
+    @Test
+    void testInterruptedJournalWriterFailsWaiters() throws Exception {
+        try (GameJournal journal = GameJournal.open(dir, true)) {
+            Thread flusher = (Thread) ReflectionTestUtils.getField(journal, "flusher");
+            flusher.interrupt();
+            flusher.join();
+
+            long sequence = journal.moveMade(UUID.randomUUID(), 0, move(12, 28).encode());
+            assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> assertThrows(UncheckedIOException.class, () -> journal.awaitDurable(sequence)));
+        }
+    }
+
+    @Test
+    void testTornJournalTailIsIgnored() throws IOException {
+        UUID gameId;
+        try (GameJournal journal = GameJournal.open(dir, false)) {
+            GameServiceImpl gameService = newGameService(journal);
+            gameId = gameService.startNewGame();
+            gameService.makeMove(gameId, move(12, 28));
+            gameService.makeMove(gameId, move(52, 36));
+        }
+
+        // cut the last move record short, as a crash part way through a write would
+        Path segment;
+        try (var files = Files.list(dir)) {
+            segment = files.filter(file -> file.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 3));
+
+        try (GameJournal journal = GameJournal.open(dir, false)) {
+            GameServiceImpl gameService = newGameService(journal);
+
+            assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1", gameService.getPosition(gameId).fen());
+        }
+    }
+
+    @Test
+    void testReplayedGamesEndTheSameWay() throws IOException {
+        UUID gameId;
+        Move knightOut = new Move(PieceType.KNIGHT, Move.MoveType.STANDARD, 6, 21);
+        Move knightBack = new Move(PieceType.KNIGHT, Move.MoveType.STANDARD, 21, 6);
+        try (GameJournal journal = GameJournal.open(dir, false)) {
+            GameServiceImpl gameService = newGameService(journal);
+            gameId = gameService.startNewGame();
+
+            // the start position for the third time
+            for (int i = 0; i < 2; i++) {
+                gameService.makeMove(gameId, knightOut);
+                gameService.makeMove(gameId, new Move(PieceType.KNIGHT, Move.MoveType.STANDARD, 62, 45));
+                gameService.makeMove(gameId, knightBack);
+                assertNotEquals(GameStatus.INVALID_MOVE, gameService.makeMove(gameId, new Move(PieceType.KNIGHT, Move.MoveType.STANDARD, 45, 62)));
+            }
+        }
+
+        try (GameJournal journal = GameJournal.open(dir, false)) {
+            List<GameJournal.SavedGame> saved = journal.recover();
+            assertEquals(1, saved.size());
+            assertEquals(8, saved.get(0).moves().length);
+
+            // a legal move on a finished game gives its status
+            assertEquals(GameStatus.DRAW, newGameService(journal).makeMove(gameId, knightOut));
+        }
+    }
+}
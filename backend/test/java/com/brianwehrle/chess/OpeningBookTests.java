@@ -0,0 +1,120 @@
+package com.brianwehrle.chess;
+
+import com.brianwehrle.chess.engine.OpeningBook;
+import com.brianwehrle.chess.engine.PolyglotKeys;
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.utilities.Converter;
+import com.brianwehrle.chess.utilities.Perft;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpeningBookTests {
+
+    @TempDir
+    Path dir;
+
+    // any 781 numbers work for a book written with the same keys
+    private PolyglotKeys writeKeys() throws IOException {
+        SplittableRandom random = new SplittableRandom(781);
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < PolyglotKeys.COUNT; i++) {
+            text.append(String.format("0x%016XULL,%n", random.nextLong()));
+        }
+
+        Path path = dir.resolve("keys.txt");
+        Files.writeString(path, text);
+        return PolyglotKeys.load(path);
+    }
+
+    // entries are {key, move, weight}, written sorted by key like a real book
+    private Path writeBook(long[][] entries) throws IOException {
+        long[][] sorted = entries.clone();
+        Arrays.sort(sorted, (a, b) -> Long.compareUnsigned(a[0], b[0]));
+
+        ByteBuffer buffer = ByteBuffer.allocate(sorted.length * 16);
+        for (long[] entry : sorted) {
+            buffer.putLong(entry[0]).putShort((short) entry[1]).putShort((short) entry[2]).putInt(0);
+        }
+
+        Path path = dir.resolve("book.bin");
+        Files.write(path, buffer.array());
+        return path;
+    }
+
+    private static int bookMove(String uci) {
+        return (uci.charAt(3) - '1') << 3 | (uci.charAt(2) - 'a') | (uci.charAt(1) - '1') << 9 | (uci.charAt(0) - 'a') << 6;
+    }
+
+    @Test
+    void testLookup() throws IOException {
+        PolyglotKeys keys = writeKeys();
+        Chessboard start = Perft.boardFromFen(Perft.START_POSITION);
+        Chessboard castling = Perft.boardFromFen("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+        long startKey = keys.key(start.getPosition());
+        long castlingKey = keys.key(castling.getPosition());
+
+        OpeningBook book = OpeningBook.open(writeBook(new long[][] {
+                {startKey, bookMove("e2e4"), 30},
+                {startKey, bookMove("d2d4"), 20},
+                {castlingKey, bookMove("e1h1"), 1},
+                {startKey ^ 1, bookMove("g1f3"), 5}
+        }), keys);
+
+        assertEquals(4, book.size());
+
+        List<String> startMoves = new ArrayList<>();
+        for (OpeningBook.BookMove move : book.lookup(start)) {
+            startMoves.add(Converter.moveToUci(move.move()) + " " + move.weight());
+        }
+        assertEquals(List.of("e2e4 30", "d2d4 20"), startMoves);
+
+        // castling is stored as the king taking its rook
+        assertEquals("e1g1", Converter.moveToUci(book.lookup(castling).get(0).move()));
+        assertNotNull(book.pick(start, new SplittableRandom(1)));
+        assertNull(book.pick(Perft.boardFromFen("4k3/8/8/8/8/8/8/4K3 w - - 0 1"), new SplittableRandom(1)));
+    }
+
+    @Test
+    void testKeysAgreeWithMoves() throws IOException {
+        PolyglotKeys keys = writeKeys();
+
+        // the same position reached in different orders hashes the same
+        Chessboard first = Perft.boardFromFen("rnbqkbnr/pppppppp/8/8/8/5N2/PPPPPPPP/RNBQKB1R b KQkq - 1 1");
+        Chessboard second = Perft.boardFromFen("rnbqkbnr/pppppppp/8/8/8/5N2/PPPPPPPP/RNBQKB1R b KQkq - 3 2");
+        assertEquals(keys.key(first.getPosition()), keys.key(second.getPosition()));
+
+        // an en passant square no pawn can take on doesn't count
+        Chessboard noCapture = Perft.boardFromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+        Chessboard noSquare = Perft.boardFromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1");
+        assertEquals(keys.key(noSquare.getPosition()), keys.key(noCapture.getPosition()));
+    }
+
+    @Test
+    void testStandardKeys() {
+        // the examples from the Polyglot book format spec
+        Map<String, Long> expected = new LinkedHashMap<>();
+        expected.put(Perft.START_POSITION, 0x463b96181691fc9cL);
+        expected.put("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", 0x823c9b50fd114196L);
+        expected.put("rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2", 0x0756b94461c50fb0L);
+        expected.put("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2", 0x662fafb965db29d4L);
+        expected.put("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3", 0x22a48b5a8e47ff78L);
+        expected.put("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 3", 0x652a607ca3f242c1L);
+        expected.put("rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4", 0x00fdd303c946bdd9L);
+        expected.put("rnbqkbnr/p1pppppp/8/8/PpP4P/8/1P1PPPP1/RNBQKBNR b KQkq c3 0 3", 0x3c8123ea7b067637L);
+        expected.put("rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4", 0x5c3f9b829b279560L);
+
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            long key = PolyglotKeys.standard().key(Perft.boardFromFen(entry.getKey()).getPosition());
+            assertEquals(entry.getValue(), key, entry.getKey());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.brianwehrle.chess;
+
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.utilities.Perft;
+import com.brianwehrle.chess.utilities.Perft.ReferencePosition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PerftTests {
+    // deep enough to cover castling, en passant, promotions and pins in every position,
+    // shallow enough to keep the test run short. Run Perft's main for the full depths.
+    private static final int MAX_NODES = 1_000_000;
+
+    static List<ReferencePosition> referencePositions() {
+        return Perft.REFERENCE_POSITIONS;
+    }
+
+    @ParameterizedTest
+    @MethodSource("referencePositions")
+    void testReferencePositions(ReferencePosition reference) {
+        Chessboard board = Perft.boardFromFen(reference.fen());
+        String fenBefore = board.convertPositionToFen();
+        long keyBefore = board.getKey();
+        int materialBefore = board.getPosition().getMaterial();
+        int pieceSquareBefore = board.getPosition().getPieceSquare();
+
+        for (int depth = 1; depth <= reference.maxDepth(); depth++) {
+            long expected = reference.expectedNodes()[depth - 1];
+            if (expected > MAX_NODES) break;
+
+            assertEquals(expected, Perft.perft(board, depth), reference.name() + " depth " + depth);
+        }
+
+        // every move was taken back
+        assertEquals(fenBefore, board.convertPositionToFen());
+        assertEquals(keyBefore, board.getKey());
+        assertEquals(materialBefore, board.getPosition().getMaterial());
+        assertEquals(pieceSquareBefore, board.getPosition().getPieceSquare());
+    }
+
+    @Test
+    void testDivideAddsUpToPerft() {
+        Chessboard board = Perft.boardFromFen(Perft.REFERENCE_POSITIONS.get(1).fen());
+
+        Map<String, Long> divide = Perft.divide(board, 3);
+
+        assertEquals(48, divide.size());
+        assertEquals(97862, divide.values().stream().mapToLong(Long::longValue).sum());
+    }
+}
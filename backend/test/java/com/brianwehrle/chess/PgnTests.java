@@ -0,0 +1,184 @@
+package com.brianwehrle.chess;
+
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Game;
+import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.utilities.BatchAnalysis;
+import com.brianwehrle.chess.utilities.Converter;
+import com.brianwehrle.chess.utilities.PgnReader;
+import com.brianwehrle.chess.utilities.Perft;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PgnTests {
+
+    @TempDir
+    Path dir;
+
+    private static final String ARCHIVE = """
+            [Event "Opera Game"]
+            [White "Paul Morphy"]
+            [Black "Duke of Brunswick and Count Isouard"]
+            [Result "1-0"]
+
+            1. e4 e5 2. Nf3 d6 3. d4 Bg4 {This is a weak move already.} 4. dxe5 Bxf3 5. Qxf3 dxe5
+            6. Bc4 Nf6 7. Qb3 Qe7 8. Nc3 c6 9. Bg5 b5 $6 10. Nxb5! cxb5 11. Bxb5+ Nbd7
+            12. O-O-O Rd8 13. Rxd7 Rxd7 (13... Nxd7 14. Qb8+ (14. Qa4) Nxb8 15. Rd8#) 14. Rd1 Qe6
+            15. Bxd7+ Nxd7 16. Qb8+ Nxb8 17. Rd8# 1-0
+
+            [Event "Illegal"]
+            [Result "*"]
+
+            1. e4 e5 2. Ke3 *
+
+            [Event "From a position"]
+            [FEN "8/P7/8/8/8/8/8/k2K4 w - - 0 1"]
+            [Result "*"]
+
+            ; a comment to the end of the line
+            1. a8=Q+ Kb2 2.Qb7+ 2...Ka2 3. Qa6+ Kb3 *
+            """;
+
+    private Path writeArchive() throws IOException {
+        Path path = dir.resolve("games.pgn");
+        Files.writeString(path, ARCHIVE);
+        return path;
+    }
+
+    @Test
+    void testReadsGamesOneAtATime() throws IOException {
+        List<PgnReader.PgnGame> games = new ArrayList<>();
+
+        try (PgnReader reader = PgnReader.open(writeArchive())) {
+            for (PgnReader.PgnGame game = reader.next(); game != null; game = reader.next()) {
+                games.add(game);
+            }
+
+            assertEquals(3, reader.getGamesRead());
+            assertEquals(1, reader.getGamesWithErrors());
+        }
+
+        PgnReader.PgnGame opera = games.get(0);
+        assertEquals("Paul Morphy", opera.tags().get("White"));
+        assertEquals("1-0", opera.result());
+        // the variation isn't part of the game
+        assertEquals(33, opera.moves().length);
+
+        Game game = opera.toGame();
+        assertEquals(Game.GameStatus.VICTORY_WHITE, game.getStatus());
+
+        // the moves up to the illegal king move
+        PgnReader.PgnGame illegal = games.get(1);
+        assertEquals(2, illegal.moves().length);
+        assertEquals("illegal or ambiguous move Ke3 at ply 3", illegal.error());
+
+        PgnReader.PgnGame promotion = games.get(2);
+        assertEquals(6, promotion.moves().length);
+        assertEquals(Move.MoveType.PROMOTION_QUEEN, Move.moveTypeOf(promotion.moves()[0]));
+        assertEquals("8/8/Q7/8/8/1k6/8/3K4 w - - 5 4", promotion.toGame().getFen());
+    }
+
+    @Test
+    void testCastlingWithZeros() throws IOException {
+        Path path = dir.resolve("castling.pgn");
+        Files.writeString(path, """
+                [Result "1-0"]
+
+                1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5 4. 0-0 Nf6 5. d3 d6 1-0
+
+                [Result "*"]
+
+                1. d4 d5 2. Nc3 Nc6 3. Bf4 Bf5 4. Qd2 Qd7 5. 0-0-0 0-0-0 *
+                """);
+
+        try (PgnReader reader = PgnReader.open(path)) {
+            PgnReader.PgnGame kingside = reader.next();
+            assertTrue(kingside.isValid(), kingside.error());
+            assertEquals(10, kingside.moves().length);
+            assertEquals("e1g1", Converter.moveToUci(Move.fromEncoded(kingside.moves()[6])));
+            assertEquals("1-0", kingside.result());
+
+            PgnReader.PgnGame queenside = reader.next();
+            assertTrue(queenside.isValid(), queenside.error());
+            assertEquals(10, queenside.moves().length);
+            assertEquals("e8c8", Converter.moveToUci(Move.fromEncoded(queenside.moves()[9])));
+            assertEquals("*", queenside.result());
+        }
+    }
+
+    @Test
+    void testAlgebraicToMove() {
+        Chessboard board = Perft.boardFromFen(Perft.REFERENCE_POSITIONS.get(1).fen());
+
+        assertEquals("e1g1", Converter.moveToUci(Converter.algebraicToMove(board, "O-O")));
+        assertEquals("e1c1", Converter.moveToUci(Converter.algebraicToMove(board, "0-0-0")));
+        assertEquals("d5e6", Converter.moveToUci(Converter.algebraicToMove(board, "dxe6")));
+        assertEquals("e5f7", Converter.moveToUci(Converter.algebraicToMove(board, "Nxf7!?")));
+        // no such move
+        assertNull(Converter.algebraicToMove(board, "Ke3"));
+        assertNull(Converter.algebraicToMove(board, "e9"));
+    }
+
+    @Test
+    void testAmbiguousMoves() {
+        Chessboard board = Perft.boardFromFen("4k3/8/8/8/8/8/4K3/R6R w - - 0 1");
+
+        assertNull(Converter.algebraicToMove(board, "Rd1"));
+        assertEquals("a1d1", Converter.moveToUci(Converter.algebraicToMove(board, "Rad1")));
+        assertEquals("h1d1", Converter.moveToUci(Converter.algebraicToMove(board, "Rhd1")));
+    }
+
+    @Test
+    void testPgnToMoveList() {
+        ArrayList<Move> moves = Converter.pgnToMoveList("1. e4 {best by test} e5 2. Nf3 Nc6 *");
+
+        assertEquals(List.of("e2e4", "e7e5", "g1f3", "b8c6"), moves.stream().map(Converter::moveToUci).toList());
+    }
+
+    @Test
+    void testBatchAnalysis() throws IOException {
+        writeArchive();
+        Files.writeString(dir.resolve("more.pgn"), """
+                [Result "1/2-1/2"]
+
+                1. Nf3 Nf6 2. Ng1 Ng8 3. Nf3 Nf6 4. Ng1 Ng8 5. e4 1/2-1/2
+
+                [Result "0-1"]
+
+                1. f3 e5 2. g4 Qh4# 0-1
+                """);
+        Files.writeString(dir.resolve("positions.epd"), """
+                7k/5Q2/6K1/8/8/8/8/8 b - - id "stalemate";
+                8/8/8/8 w - -
+                """);
+
+        List<BatchAnalysis.GameReport> reports = Collections.synchronizedList(new ArrayList<>());
+        BatchAnalysis.Summary summary = BatchAnalysis.analyze(dir, 2, reports::add);
+
+        assertEquals(7, summary.games());
+        assertEquals(2, summary.errors());
+
+        Map<BatchAnalysis.Termination, Integer> terminations = new EnumMap<>(BatchAnalysis.Termination.class);
+        for (BatchAnalysis.GameReport report : reports) terminations.merge(report.termination(), 1, Integer::sum);
+
+        assertEquals(Map.of(BatchAnalysis.Termination.CHECKMATE, 2,
+                BatchAnalysis.Termination.REPETITION, 1,
+                BatchAnalysis.Termination.STALEMATE, 1,
+                BatchAnalysis.Termination.UNFINISHED, 1,
+                BatchAnalysis.Termination.INVALID, 2), terminations);
+
+        // the start position comes up for the third time after 8 plies
+        BatchAnalysis.GameReport repetition = reports.stream()
+                .filter(report -> report.termination() == BatchAnalysis.Termination.REPETITION)
+                .findFirst().orElseThrow();
+        assertEquals(8, repetition.drawPly());
+        assertEquals(9, repetition.plies());
+    }
+}
@@ -0,0 +1,214 @@
+package com.brianwehrle.chess;
+
+import com.brianwehrle.chess.engine.EndgameTablebase;
+import com.brianwehrle.chess.engine.Evaluator;
+import com.brianwehrle.chess.engine.ParallelSearch;
+import com.brianwehrle.chess.engine.Search;
+import com.brianwehrle.chess.engine.SearchLimits;
+import com.brianwehrle.chess.engine.SearchResult;
+import com.brianwehrle.chess.engine.StaticExchange;
+import com.brianwehrle.chess.engine.TablebaseResult;
+import com.brianwehrle.chess.engine.TranspositionTable;
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.models.MoveGenerator;
+import com.brianwehrle.chess.models.MoveList;
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+import com.brianwehrle.chess.utilities.Converter;
+import com.brianwehrle.chess.utilities.Perft;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchTests {
+
+    private static SearchResult search(String fen, SearchLimits limits) {
+        return new Search(Perft.boardFromFen(fen)).search(limits);
+    }
+
+    @Test
+    void testIncrementalEvaluation() {
+        Chessboard board = Perft.boardFromFen(Perft.START_POSITION);
+        assertEquals(0, Evaluator.evaluate(board.getPosition()));
+
+        // e2 is the worst square for the pawn and e4 one of the best
+        board.makeMove(Move.encode(PieceType.PAWN, Move.MoveType.STANDARD, 12, 28));
+        assertEquals(0, board.getPosition().getMaterial());
+        assertEquals(40, board.getPosition().getPieceSquare());
+        // black to move, so from black's point of view
+        assertEquals(-40, Evaluator.evaluate(board.getPosition()));
+
+        // the same position loaded from scratch scores the same
+        Chessboard loaded = Perft.boardFromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1");
+        assertEquals(board.getPosition().getPieceSquare(), loaded.getPosition().getPieceSquare());
+    }
+
+    @Test
+    void testCapturesOnly() {
+        Chessboard board = Perft.boardFromFen(Perft.REFERENCE_POSITIONS.get(1).fen());
+        MoveList captures = new MoveList();
+        MoveGenerator.generateCaptures(board, captures);
+
+        // kiwipete has 8 captures, none of them en passant or promotions
+        assertEquals(8, captures.size());
+        for (int i = 0; i < captures.size(); i++) {
+            assertEquals(Move.MoveType.CAPTURE, Move.moveTypeOf(captures.get(i)));
+        }
+
+        int capturesInAllMoves = 0;
+        for (Move move : MoveGenerator.generateLegalMoves(board)) {
+            if (move.getMoveType() == Move.MoveType.CAPTURE) capturesInAllMoves++;
+        }
+        assertEquals(8, capturesInAllMoves);
+    }
+
+    @Test
+    void testStaticExchange() {
+        // rook takes an undefended pawn
+        Chessboard board = Perft.boardFromFen("1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1");
+        assertEquals(100, StaticExchange.evaluate(board, Move.encode(PieceType.ROOK, Move.MoveType.CAPTURE, 4, 36)));
+
+        // knight takes a pawn defended by a knight, with rooks and queens stacked behind on both sides
+        board = Perft.boardFromFen("1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1");
+        assertTrue(StaticExchange.evaluate(board, Move.encode(PieceType.KNIGHT, Move.MoveType.CAPTURE, 19, 36)) < 0);
+    }
+
+    @Test
+    void testFindsMateInOne() {
+        SearchResult result = search("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1", SearchLimits.ofDepth(4));
+
+        assertEquals("a1a8", Converter.moveToUci(result.bestMove()));
+        assertEquals(Search.MATE - 1, result.score());
+    }
+
+    @Test
+    void testTakesHangingQueen() {
+        SearchResult result = search("4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1", SearchLimits.ofDepth(3));
+
+        assertEquals("d1d5", Converter.moveToUci(result.bestMove()));
+    }
+
+    @Test
+    void testQuiescenceSeesRecapture() {
+        // the d5 pawn is defended, so taking it with the queen at the horizon loses the queen
+        SearchResult result = search("4k3/8/4p3/3p4/8/8/8/3QK3 w - - 0 1", SearchLimits.ofDepth(1));
+
+        assertNotEquals("d1d5", Converter.moveToUci(result.bestMove()));
+    }
+
+    @Test
+    void testNoMoveWhenStalemated() {
+        SearchResult result = search("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1", SearchLimits.ofDepth(3));
+
+        assertNull(result.bestMove());
+        assertEquals(0, result.score());
+    }
+
+    @Test
+    void testStopsAtNodeBudget() {
+        SearchResult result = search(Perft.START_POSITION, new SearchLimits(Long.MAX_VALUE, 10_000, Search.MAX_PLY));
+
+        assertNotNull(result.bestMove());
+        assertTrue(result.nodes() < 10_000 + 2048);
+    }
+
+    @Test
+    void testTranspositionTableRoundTrip() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = Perft.boardFromFen(Perft.START_POSITION).getKey();
+        int move = 12 | 28 << 6;
+
+        table.newSearch();
+        table.store(key, move, -Search.MATE + 7, 5, TranspositionTable.UPPER, 3);
+        long entry = table.probe(key);
+
+        assertEquals(move, TranspositionTable.move(entry));
+        // stored relative to the entry, read back relative to a root one ply further away
+        assertEquals(-Search.MATE + 8, TranspositionTable.score(entry, 4));
+        assertEquals(5, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.UPPER, TranspositionTable.bound(entry));
+
+        // same slot, different position
+        assertEquals(TranspositionTable.MISS, table.probe(key ^ (1L << 40)));
+        assertEquals(1, table.getStats().hits());
+        assertEquals(1, table.getStats().collisions());
+    }
+
+    @Test
+    void testTablebaseScoresAreStoredRelativeToTheEntry() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = Perft.boardFromFen("8/8/8/8/8/2k5/8/K6Q w - - 0 1").getKey();
+
+        table.newSearch();
+        table.store(key, Move.NONE, Search.TABLEBASE_WIN - 9, 4, TranspositionTable.EXACT, 9);
+        assertEquals(Search.TABLEBASE_WIN - 2, TranspositionTable.score(table.probe(key), 2));
+
+        // a distance to mate beyond the plies the search can reach
+        table.store(key, Move.NONE, -Search.MATE + 9 + 200, 4, TranspositionTable.EXACT, 9);
+        assertEquals(-Search.MATE + 2 + 200, TranspositionTable.score(table.probe(key), 2));
+    }
+
+    @Test
+    void testSharedTableGivesSameAnswer() {
+        String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+        TranspositionTable table = new TranspositionTable(16);
+
+        SearchResult first = new Search(Perft.boardFromFen(fen), table).search(SearchLimits.ofDepth(4));
+        SearchResult second = new Search(Perft.boardFromFen(fen), table).search(SearchLimits.ofDepth(4));
+
+        assertEquals(first.score(), second.score());
+        // the second search is mostly answered by the table
+        assertTrue(second.nodes() < first.nodes());
+    }
+
+    @Test
+    void testParallelSearchCountsEveryThread() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        ParallelSearch search = new ParallelSearch(Perft.boardFromFen("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1"),
+                new TranspositionTable(16), executor);
+
+        SearchResult result = search.search(SearchLimits.ofDepth(5), 4);
+        executor.shutdown();
+
+        assertEquals("a1a8", Converter.moveToUci(result.bestMove()));
+        assertEquals(4, result.threads());
+        assertTrue(result.nodes() > 0);
+    }
+
+    private static TablebaseResult probe(String fen) {
+        return EndgameTablebase.getInstance().probe(Perft.boardFromFen(fen).getPosition());
+    }
+
+    @Test
+    void testTablebaseResults() {
+        assertEquals(new TablebaseResult(TablebaseResult.Wdl.WIN, 1), probe("k7/8/1K6/8/8/8/7Q/8 w - - 0 1"));
+        assertEquals(new TablebaseResult(TablebaseResult.Wdl.LOSS, 0), probe("k6Q/8/1K6/8/8/8/8/8 b - - 0 1"));
+        // same position with the colors swapped
+        assertEquals(new TablebaseResult(TablebaseResult.Wdl.WIN, 1), probe("8/7q/8/8/8/1k6/8/K7 b - - 0 1"));
+
+        // king in front of a rook pawn, and a pawn that can be taken
+        assertEquals(TablebaseResult.DRAW, probe("k7/8/8/8/8/8/P7/K7 w - - 0 1"));
+        assertEquals(TablebaseResult.DRAW, probe("8/8/8/8/8/3k4/3P4/7K b - - 0 1"));
+        assertEquals(TablebaseResult.DRAW, probe("8/8/8/3k4/8/8/3N4/3K4 w - - 0 1"));
+
+        // the longest rook mate is 16 moves
+        assertEquals(TablebaseResult.Wdl.WIN, probe("8/8/8/3k4/8/8/8/R3K3 w - - 0 1").wdl());
+        assertTrue(probe("8/8/8/3k4/8/8/8/R3K3 w - - 0 1").pliesToMate() <= 31);
+
+        // too many pieces
+        assertNull(probe(Perft.START_POSITION));
+    }
+
+    @Test
+    void testSearchUsesTablebase() {
+        String fen = "8/8/8/3k4/8/8/8/R3K3 w - - 0 1";
+        int pliesToMate = probe(fen).pliesToMate();
+
+        // the mate is far past a depth 2 search, but every position it reaches is in the tablebase
+        SearchResult result = search(fen, SearchLimits.ofDepth(2));
+        assertEquals(Search.MATE - pliesToMate, result.score());
+    }
+}
@@ -0,0 +1,479 @@
+package com.brianwehrle.chess;
+
+import com.brianwehrle.chess.engine.EndgameTablebase;
+import com.brianwehrle.chess.engine.Search;
+import com.brianwehrle.chess.engine.SearchLimits;
+import com.brianwehrle.chess.engine.SearchResult;
+import com.brianwehrle.chess.engine.SyzygyTablebase;
+import com.brianwehrle.chess.engine.TablebaseResult;
+import com.brianwehrle.chess.engine.TranspositionTable;
+import com.brianwehrle.chess.models.Chessboard;
+import com.brianwehrle.chess.models.Color;
+import com.brianwehrle.chess.models.Move;
+import com.brianwehrle.chess.models.Position;
+import com.brianwehrle.chess.models.pieces.Piece.PieceType;
+import com.brianwehrle.chess.utilities.Perft;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyzygyTablebaseTests {
+
+    private static final EndgameTablebase GENERATED = EndgameTablebase.getInstance();
+
+    private static final int[] WDL_MAGIC = {0x71, 0xE8, 0x23, 0x5D};
+    private static final int[] DTZ_MAGIC = {0xD7, 0x66, 0x0C, 0xA5};
+    // the DTZ table has white to move, with wins counted in plies, and its values mapped
+    private static final int DTZ_FLAGS = 2 | 4 | 8;
+
+    // where the first of the three pieces goes after mirroring: b1 c1 d1 c2 d2 d3, then the diagonal
+    private static final int[] TRIANGLE = {1, 2, 3, 10, 11, 19, 0, 9, 18, 27};
+    private static final int TABLE_SIZE = 31332;
+
+    @TempDir
+    Path dir;
+
+    // KQvK and KRvK from the generated tables, written the way Syzygy files are. the pieces
+    // are in the order piece, white king, black king
+    private SyzygyTablebase writeTablebase(int maxOpenFiles) throws IOException {
+        for (PieceType type : List.of(PieceType.QUEEN, PieceType.ROOK)) {
+            String name = (type == PieceType.QUEEN ? "KQvK" : "KRvK");
+            int piece = type.ordinal() + 1;
+            int[][] values = values(type);
+
+            Files.write(dir.resolve(name + ".rtbw"), file(WDL_MAGIC, piece, List.of(encode(values[0], 0), encode(values[1], 0)), null));
+
+            // dtz is stored as an index into the map of the distances for wins
+            int[] distances = Arrays.stream(values[2]).filter(value -> value >= 0).distinct().sorted().toArray();
+            int[] indexes = Arrays.stream(values[2]).map(value -> value < 0 ? -1 : Arrays.binarySearch(distances, value)).toArray();
+            Files.write(dir.resolve(name + ".rtbz"), file(DTZ_MAGIC, piece, List.<byte[][]>of(encode(indexes, DTZ_FLAGS)), maps(distances)));
+        }
+
+        return new SyzygyTablebase(List.of(dir), maxOpenFiles, GENERATED);
+    }
+
+    // values by index: win/draw/loss + 2 with white to move and with black to move, then
+    // plies to mate - 1 for white's wins. -1 where the index isn't a legal position
+    private static int[][] values(PieceType type) {
+        int[][] values = new int[3][TABLE_SIZE];
+        for (int[] table : values) Arrays.fill(table, -1);
+
+        for (int first : TRIANGLE) {
+            for (int whiteKing = 0; whiteKing < 64; whiteKing++) {
+                for (int blackKing = 0; blackKing < 64; blackKing++) {
+                    if (first == whiteKing || first == blackKing || whiteKing == blackKing) continue;
+
+                    int index = index(first, whiteKing, blackKing);
+                    for (Color side : Color.values()) {
+                        TablebaseResult result = GENERATED.probe(position(type, Color.WHITE, first, whiteKing, blackKing, side));
+                        if (result == null) continue;
+
+                        values[side.ordinal()][index] = wdl(result.wdl()) + 2;
+                        if (side == Color.WHITE && result.wdl() == TablebaseResult.Wdl.WIN) values[2][index] = result.pliesToMate() - 1;
+                    }
+                }
+            }
+        }
+
+        return values;
+    }
+
+    // the reference prober's index for three different pieces without pawns
+    private static int index(int... squares) {
+        int[] s = squares.clone();
+        if (s[0] % 8 > 3) for (int i = 0; i < 3; i++) s[i] ^= 7;
+        if (s[0] / 8 > 3) for (int i = 0; i < 3; i++) s[i] ^= 56;
+
+        for (int i = 0; i < 3; i++) {
+            if (offDiagonal(s[i]) == 0) continue;
+            if (offDiagonal(s[i]) > 0) {
+                for (int j = i; j < 3; j++) s[j] = ((s[j] >>> 3) | (s[j] << 3)) & 63;
+            }
+            break;
+        }
+
+        int adjust1 = (s[1] > s[0] ? 1 : 0);
+        int adjust2 = (s[2] > s[0] ? 1 : 0) + (s[2] > s[1] ? 1 : 0);
+
+        if (offDiagonal(s[0]) != 0) return (triangle(s[0]) * 63 + s[1] - adjust1) * 62 + s[2] - adjust2;
+        if (offDiagonal(s[1]) != 0) return (6 * 63 + s[0] / 8 * 28 + belowDiagonal(s[1])) * 62 + s[2] - adjust2;
+        if (offDiagonal(s[2]) != 0) return 6 * 63 * 62 + 4 * 28 * 62 + s[0] / 8 * 7 * 28 + (s[1] / 8 - adjust1) * 28 + belowDiagonal(s[2]);
+        return 6 * 63 * 62 + 4 * 28 * 62 + 4 * 7 * 28 + s[0] / 8 * 7 * 6 + (s[1] / 8 - adjust1) * 6 + s[2] / 8 - adjust2;
+    }
+
+    private static int offDiagonal(int square) {
+        return square / 8 - square % 8;
+    }
+
+    private static int triangle(int square) {
+        for (int i = 0; i < TRIANGLE.length; i++) {
+            if (TRIANGLE[i] == square) return i;
+        }
+        throw new IllegalArgumentException();
+    }
+
+    private static int belowDiagonal(int square) {
+        int code = 0;
+        for (int other = 0; other < square; other++) {
+            if (offDiagonal(other) < 0) code++;
+        }
+        return code;
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+        private void u8(int value) {
+            write(value);
+        }
+
+        private void u16(int value) {
+            u8(value & 0xFF);
+            u8(value >>> 8);
+        }
+
+        private void u32(int value) {
+            u16(value & 0xFFFF);
+            u16(value >>> 16);
+        }
+
+        private void align(int bytes) {
+            while (size() % bytes != 0) u8(0);
+        }
+    }
+
+    private static byte[] file(int[] magic, int piece, List<byte[][]> sides, byte[] maps) {
+        Writer out = new Writer();
+        for (int b : magic) out.u8(b);
+        // the two sides aren't the same, no pawns
+        out.u8(1);
+        // the three pieces together are the only group, first in the index
+        out.u8(0);
+        for (int code : new int[] {piece, 6, 14}) out.u8(code | code << 4);
+        out.align(2);
+
+        for (byte[][] side : sides) out.writeBytes(side[0]);
+        if (maps != null) {
+            out.writeBytes(maps);
+            out.align(2);
+        }
+        for (byte[][] side : sides) out.writeBytes(side[1]);
+        for (byte[][] side : sides) out.writeBytes(side[2]);
+        for (byte[][] side : sides) {
+            out.align(64);
+            out.writeBytes(side[3]);
+        }
+
+        // decoding reads a little past the last block, and files end 16 bytes past a multiple of 64
+        out.writeBytes(new byte[16]);
+        out.align(64);
+        out.writeBytes(new byte[16]);
+        return out.toByteArray();
+    }
+
+    // the values for a win, then none for a loss, cursed win and blessed loss
+    private static byte[] maps(int[] distances) {
+        Writer out = new Writer();
+        out.u8(distances.length);
+        for (int distance : distances) out.u8(distance);
+        for (int i = 1; i < 4; i++) out.u8(0);
+        return out.toByteArray();
+    }
+
+    // one side's values as {sizes, sparse index, block lengths, blocks}. symbols are Huffman
+    // coded into 32 byte blocks, and pairs of the most common value get a symbol of their own
+    private static byte[][] encode(int[] table, int flags) {
+        int[] counts = new int[256];
+        for (int value : table) if (value >= 0) counts[value]++;
+        int mostCommon = 0;
+        for (int value = 0; value < 256; value++) if (counts[value] > counts[mostCommon]) mostCommon = value;
+        int common = mostCommon;
+
+        int[] values = Arrays.stream(table).map(value -> value < 0 ? common : value).toArray();
+        int[] distinct = Arrays.stream(values).distinct().sorted().toArray();
+
+        // a leaf for each value, then the pair
+        int symbols = distinct.length + 1;
+        int pair = distinct.length;
+        int commonLeaf = Arrays.binarySearch(distinct, common);
+
+        List<Integer> tokens = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == common && i + 1 < values.length && values[i + 1] == common) {
+                tokens.add(pair);
+                i++;
+            } else {
+                tokens.add(Arrays.binarySearch(distinct, values[i]));
+            }
+        }
+
+        int[] frequencies = new int[symbols];
+        for (int token : tokens) frequencies[token]++;
+        int[] lengths = huffmanLengths(frequencies);
+
+        // longer codes get lower symbols, symbols without a code go last
+        Integer[] order = new Integer[symbols];
+        for (int i = 0; i < symbols; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingInt((Integer s) -> lengths[s] == 0 ? 1 : 0).thenComparingInt(s -> -lengths[s]));
+        int[] renamed = new int[symbols];
+        for (int i = 0; i < symbols; i++) renamed[order[i]] = i;
+
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (int length : lengths) {
+            if (length == 0) continue;
+            minLength = Math.min(minLength, length);
+            maxLength = Math.max(maxLength, length);
+        }
+
+        // canonical codes, the first of each length right after the codes longer than it
+        int[] lowest = new int[maxLength + 2];
+        int[] base = new int[maxLength + 2];
+        for (int length = maxLength; length >= minLength; length--) {
+            int longer = 0;
+            for (int length2 : lengths) if (length2 > length) longer++;
+            lowest[length] = longer;
+            base[length] = (length == maxLength ? 0 : (base[length + 1] + lowest[length] - lowest[length + 1]) / 2);
+        }
+        int[] codes = new int[symbols];
+        for (int s = 0; s < symbols; s++) {
+            if (lengths[s] > 0) codes[s] = base[lengths[s]] + renamed[s] - lowest[lengths[s]];
+        }
+
+        Writer sizes = new Writer();
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        List<Integer> blockValues = new ArrayList<>();
+        byte[] block = new byte[32];
+        int bits = 0;
+        int blockCount = 0;
+        for (int token : tokens) {
+            if (bits + lengths[token] > block.length * 8) {
+                blocks.writeBytes(block);
+                blockValues.add(blockCount);
+                block = new byte[32];
+                bits = 0;
+                blockCount = 0;
+            }
+            for (int bit = lengths[token] - 1; bit >= 0; bit--, bits++) {
+                if ((codes[token] >>> bit & 1) != 0) block[bits / 8] |= (byte) (0x80 >>> (bits % 8));
+            }
+            blockCount += (token == pair ? 2 : 1);
+        }
+        blocks.writeBytes(block);
+        blockValues.add(blockCount);
+
+        sizes.u8(flags);
+        sizes.u8(5);
+        sizes.u8(6);
+        sizes.u8(0);
+        sizes.u32(blockValues.size());
+        sizes.u8(maxLength);
+        sizes.u8(minLength);
+        for (int length = minLength; length <= maxLength; length++) sizes.u16(lowest[length]);
+        sizes.u16(symbols);
+        for (int i = 0; i < symbols; i++) {
+            int s = order[i];
+            int left = (s == pair ? renamed[commonLeaf] : distinct[s]);
+            int right = (s == pair ? renamed[commonLeaf] : 0xFFF);
+            sizes.u8(left & 0xFF);
+            sizes.u8(left >>> 8 | (right & 0xF) << 4);
+            sizes.u8(right >>> 4);
+        }
+        if (symbols % 2 == 1) sizes.u8(0);
+
+        // the block and offset in it of the middle value of every span of 64
+        Writer sparse = new Writer();
+        int block1 = 0;
+        int start = 0;
+        for (int middle = 32; middle - 32 < values.length; middle += 64) {
+            while (block1 + 1 < blockValues.size() && start + blockValues.get(block1) <= Math.min(middle, values.length - 1)) {
+                start += blockValues.get(block1++);
+            }
+            sparse.u32(block1);
+            sparse.u16(middle - start);
+        }
+
+        Writer blockLengths = new Writer();
+        for (int count : blockValues) blockLengths.u16(count - 1);
+
+        return new byte[][] {sizes.toByteArray(), sparse.toByteArray(), blockLengths.toByteArray(), blocks.toByteArray()};
+    }
+
+    private static int[] huffmanLengths(int[] frequencies) {
+        int[] parents = new int[2 * frequencies.length];
+        PriorityQueue<int[]> queue = new PriorityQueue<>(Comparator.<int[]>comparingInt(node -> node[0]).thenComparingInt(node -> node[1]));
+        for (int s = 0; s < frequencies.length; s++) {
+            if (frequencies[s] > 0) queue.add(new int[] {frequencies[s], s});
+        }
+
+        int next = frequencies.length;
+        while (queue.size() > 1) {
+            int[] a = queue.poll();
+            int[] b = queue.poll();
+            parents[a[1]] = parents[b[1]] = next;
+            queue.add(new int[] {a[0] + b[0], next++});
+        }
+        int root = queue.poll()[1];
+
+        int[] lengths = new int[frequencies.length];
+        for (int s = 0; s < frequencies.length; s++) {
+            if (frequencies[s] == 0) continue;
+            for (int node = s; node != root; node = parents[node]) lengths[s]++;
+            lengths[s] = Math.max(lengths[s], 1);
+        }
+        return lengths;
+    }
+
+    private static int wdl(TablebaseResult.Wdl wdl) {
+        return switch (wdl) {
+            case WIN -> 2;
+            case CURSED_WIN -> 1;
+            case DRAW -> 0;
+            case BLESSED_LOSS -> -1;
+            case LOSS -> -2;
+        };
+    }
+
+    private static Position position(PieceType type, Color strong, int piece, int strongKing, int weakKing, Color sideToMove) {
+        Color weak = (strong == Color.WHITE ? Color.BLACK : Color.WHITE);
+        Position position = new Position();
+        position.addPiece(piece, strong, type);
+        position.addPiece(strongKing, strong, PieceType.KING);
+        position.addPiece(weakKing, weak, PieceType.KING);
+        position.setSideToMove(sideToMove);
+        return position;
+    }
+
+    private static Chessboard board(Position position) {
+        StringBuilder fen = new StringBuilder();
+        for (int row = 7; row >= 0; row--) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int piece = position.pieceAt(row * 8 + col);
+                if (piece == Position.EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) fen.append(empty);
+                empty = 0;
+
+                char letter = "PNBRQK".charAt(Position.typeOf(piece).ordinal());
+                fen.append(Position.colorOf(piece) == Color.WHITE ? letter : Character.toLowerCase(letter));
+            }
+            if (empty > 0) fen.append(empty);
+            if (row > 0) fen.append('/');
+        }
+        fen.append(position.getSideToMove() == Color.WHITE ? " w" : " b").append(" - - 0 1");
+
+        return Perft.boardFromFen(fen.toString());
+    }
+
+    // legal positions of either ending, either side stronger and either side to move
+    private static List<Position> samplePositions(int count) {
+        SplittableRandom random = new SplittableRandom(3);
+        List<Position> positions = new ArrayList<>();
+
+        while (positions.size() < count) {
+            int piece = random.nextInt(64);
+            int strongKing = random.nextInt(64);
+            int weakKing = random.nextInt(64);
+            if (piece == strongKing || piece == weakKing || strongKing == weakKing) continue;
+
+            Position position = position(random.nextBoolean() ? PieceType.QUEEN : PieceType.ROOK,
+                    random.nextBoolean() ? Color.WHITE : Color.BLACK, piece, strongKing, weakKing,
+                    random.nextBoolean() ? Color.WHITE : Color.BLACK);
+            if (GENERATED.probe(position) != null) positions.add(position);
+        }
+
+        return positions;
+    }
+
+    @Test
+    void testWinDrawLoss() throws IOException {
+        // one open file at a time, so the endings keep closing each other
+        SyzygyTablebase tablebase = writeTablebase(1);
+        assertEquals(3, tablebase.getMaxPieces());
+
+        for (Position position : samplePositions(2000)) {
+            TablebaseResult expected = GENERATED.probe(position);
+            TablebaseResult result = tablebase.probe(board(position));
+
+            assertEquals(expected.wdl(), result.wdl(), () -> board(position).convertPositionToFen());
+            assertEquals(TablebaseResult.UNKNOWN, result.pliesToMate());
+        }
+    }
+
+    @Test
+    void testDistanceToZeroing() throws IOException {
+        SyzygyTablebase tablebase = writeTablebase(4);
+
+        // without captures or pawn moves the next zeroing is the mate, a mated side has 1 to go
+        for (Position position : samplePositions(500)) {
+            TablebaseResult expected = GENERATED.probe(position);
+            TablebaseResult result = tablebase.probeDtz(board(position));
+
+            assertEquals(expected.wdl(), result.wdl(), () -> board(position).convertPositionToFen());
+            int dtz = switch (expected.wdl()) {
+                case DRAW -> 0;
+                case LOSS -> Math.max(expected.pliesToMate(), 1);
+                default -> expected.pliesToMate();
+            };
+            assertEquals(dtz, expected.wdl() == TablebaseResult.Wdl.DRAW ? result.pliesToMate() : result.dtz(),
+                    () -> board(position).convertPositionToFen());
+        }
+    }
+
+    @Test
+    void testBestMove() throws IOException {
+        SyzygyTablebase tablebase = writeTablebase(4);
+
+        for (Position position : samplePositions(200)) {
+            TablebaseResult expected = GENERATED.probe(position);
+            if (expected.wdl() == TablebaseResult.Wdl.DRAW) continue;
+
+            Chessboard board = board(position);
+            int move = tablebase.bestMove(board);
+            if (expected.pliesToMate() == 0) {
+                assertEquals(Move.NONE, move);
+                continue;
+            }
+
+            // the fastest win, or the slowest loss
+            board.makeMove(move);
+            TablebaseResult reply = GENERATED.probe(board.getPosition());
+            assertEquals(expected.pliesToMate() - 1, reply.pliesToMate(), () -> board(position).convertPositionToFen());
+        }
+
+        // the search plays it straight away
+        Chessboard board = Perft.boardFromFen("8/8/8/3k4/8/8/8/R3K3 w - - 0 1");
+        SearchResult result = new Search(board, new TranspositionTable(1), tablebase).search(SearchLimits.ofDepth(6));
+        assertEquals(Search.TABLEBASE_WIN, result.score());
+        assertEquals(Move.fromEncoded(tablebase.bestMove(board)), result.bestMove());
+    }
+
+    @Test
+    void testFallback() throws IOException {
+        SyzygyTablebase tablebase = writeTablebase(4);
+
+        // no KPvK file, so it comes from the generated tables
+        String fen = "8/8/8/3k4/8/8/3P4/3K4 w - - 0 1";
+        assertEquals(GENERATED.probe(Perft.boardFromFen(fen)), tablebase.probe(Perft.boardFromFen(fen)));
+        assertEquals(GENERATED.bestMove(Perft.boardFromFen(fen)), tablebase.bestMove(Perft.boardFromFen(fen)));
+        assertNull(tablebase.probe(Perft.boardFromFen("8/8/8/3k4/8/8/3PP3/3K4 w - - 0 1")));
+        assertNull(tablebase.probe(Perft.boardFromFen("r3k3/8/8/8/8/8/8/4K3 b q - 0 1")));
+
+        // every move here is a capture into a smaller ending, so the file isn't needed. it
+        // isn't a table at all, and any position that does need it fails
+        Files.writeString(dir.resolve("KQvKN.rtbw"), "not a table");
+        SyzygyTablebase withBroken = new SyzygyTablebase(List.of(dir), 4, GENERATED);
+        assertEquals(4, withBroken.getMaxPieces());
+        assertEquals(TablebaseResult.Wdl.DRAW, withBroken.probe(Perft.boardFromFen("7k/6Q1/4n3/8/8/8/8/K7 b - - 0 1")).wdl());
+        assertThrows(UncheckedIOException.class, () -> withBroken.probe(Perft.boardFromFen("7k/8/4n3/8/8/8/6Q1/K7 w - - 0 1")));
+    }
+}